@@ -0,0 +1,19 @@
+package ai.agentza.archive;
+
+import java.time.LocalDateTime;
+
+// A row of the transaction table, as it was when it was moved to the archive. The type is DEPOSIT or WITHDRAWAL, and the
+// status is the ordinal of Transaction.TransactionStatus, as in the table.
+public record ArchivedTransaction(
+        String transactionId,
+        String type,
+        LocalDateTime timestamp,
+        String walletId,
+        long amount,
+        String currency,
+        int status,
+        String payerDescription,
+        String payeeId,
+        String idempotencyKey,
+        long journalSequence
+) {}
@@ -0,0 +1,199 @@
+package ai.agentza.archive;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+// Reads and writes segment files: the archived transactions of one wallet in one month, ordered by (timestamp,
+// transactionId). Segments are never modified in place: adding transactions to a segment rewrites it as a whole.
+//
+// The transactions are stored column by column, each column compressed on its own, so that similar values end up next to
+// each other: the type, currency and status columns compress to almost nothing, and timestamps and journal sequences are
+// stored as variable-length deltas from the previous row.
+//
+//   "AGZS" version walletId rows (columnLength columnBytes)*
+final class Segments {
+
+    private static final int MAGIC = 0x41475a53; // AGZS
+    private static final int VERSION = 1;
+    private static final int COLUMNS = 10;
+
+    private Segments() {}
+
+    /**
+     * Writes the segment to a temporary file first and moves it into place once it is on disk, so that a segment file is
+     * either complete or absent.
+     */
+    static void write(Path path, String walletId, List<ArchivedTransaction> transactions) throws IOException {
+        Columns columns = new Columns();
+        long previousMicros = 0;
+        long previousSequence = 0;
+        for (ArchivedTransaction transaction : transactions) {
+            long micros = micros(transaction.timestamp());
+            columns.writeString(0, transaction.transactionId());
+            columns.get(1).writeBoolean(transaction.type().equals("DEPOSIT"));
+            writeVarLong(columns.get(2), micros - previousMicros);
+            writeVarLong(columns.get(3), transaction.amount());
+            columns.writeString(4, transaction.currency());
+            columns.get(5).writeByte(transaction.status());
+            columns.writeString(6, transaction.payerDescription());
+            columns.writeString(7, transaction.payeeId());
+            columns.writeString(8, transaction.idempotencyKey());
+            writeVarLong(columns.get(9), transaction.journalSequence() - previousSequence);
+            previousMicros = micros;
+            previousSequence = transaction.journalSequence();
+        }
+
+        Files.createDirectories(path.getParent());
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             var out = new DataOutputStream(Channels.newOutputStream(channel))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(walletId);
+            out.writeInt(transactions.size());
+            for (int i = 0; i < COLUMNS; i++) {
+                byte[] compressed = columns.compress(i);
+                out.writeInt(compressed.length);
+                out.write(compressed);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static List<ArchivedTransaction> read(Path path) throws IOException {
+        try (var in = new DataInputStream(Files.newInputStream(path))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a segment file: " + path);
+            }
+            String walletId = in.readUTF();
+            int rows = in.readInt();
+            DataInputStream[] columns = new DataInputStream[COLUMNS];
+            try {
+                for (int i = 0; i < COLUMNS; i++) {
+                    byte[] compressed = new byte[in.readInt()];
+                    in.readFully(compressed);
+                    columns[i] = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed)));
+                }
+                return read(columns, walletId, rows);
+            } finally {
+                for (DataInputStream column : columns) {
+                    if (column != null) {
+                        column.close();
+                    }
+                }
+            }
+        }
+    }
+
+    private static List<ArchivedTransaction> read(DataInputStream[] columns, String walletId, int rows) throws IOException {
+        List<ArchivedTransaction> transactions = new ArrayList<>(rows);
+        long micros = 0;
+        long sequence = 0;
+        for (int row = 0; row < rows; row++) {
+            String transactionId = readString(columns[0]);
+            String type = columns[1].readBoolean() ? "DEPOSIT" : "WITHDRAWAL";
+            micros += readVarLong(columns[2]);
+            long amount = readVarLong(columns[3]);
+            String currency = readString(columns[4]);
+            int status = columns[5].readByte();
+            String payerDescription = readString(columns[6]);
+            String payeeId = readString(columns[7]);
+            String idempotencyKey = readString(columns[8]);
+            sequence += readVarLong(columns[9]);
+            transactions.add(new ArchivedTransaction(transactionId, type, timestamp(micros), walletId, amount, currency, status, payerDescription, payeeId, idempotencyKey, sequence));
+        }
+        return transactions;
+    }
+
+    private static long micros(LocalDateTime timestamp) {
+        return ChronoUnit.MICROS.between(LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC), timestamp);
+    }
+
+    private static LocalDateTime timestamp(long micros) {
+        return LocalDateTime.ofEpochSecond(0, 0, ZoneOffset.UTC).plus(micros, ChronoUnit.MICROS);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    // Zig-zag encoded, 7 bits per byte, so that small deltas of either sign take a byte or two
+    private static void writeVarLong(OutputStream out, long value) throws IOException {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while ((zigZag & ~0x7FL) != 0) {
+            out.write((int) ((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        out.write((int) zigZag);
+    }
+
+    private static long readVarLong(InputStream in) throws IOException {
+        long zigZag = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("Truncated segment");
+            }
+            zigZag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigZag >>> 1) ^ -(zigZag & 1);
+            }
+        }
+    }
+
+    private static class Columns {
+
+        private final ByteArrayOutputStream[] buffers = new ByteArrayOutputStream[COLUMNS];
+        private final DataOutputStream[] outs = new DataOutputStream[COLUMNS];
+
+        Columns() {
+            for (int i = 0; i < COLUMNS; i++) {
+                buffers[i] = new ByteArrayOutputStream();
+                outs[i] = new DataOutputStream(buffers[i]);
+            }
+        }
+
+        DataOutputStream get(int column) {
+            return outs[column];
+        }
+
+        void writeString(int column, String value) throws IOException {
+            outs[column].writeBoolean(value != null);
+            if (value != null) {
+                outs[column].writeUTF(value);
+            }
+        }
+
+        byte[] compress(int column) throws IOException {
+            var compressed = new ByteArrayOutputStream();
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try (var out = new DeflaterOutputStream(compressed, deflater)) {
+                buffers[column].writeTo(out);
+            } finally {
+                deflater.end();
+            }
+            return compressed.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package ai.agentza.archive;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+// The transactions moved out of the transaction table by the TransactionArchiver, in segment files under
+// agentza.archive.dir, partitioned by month and wallet: <yyyy-MM>/<wallet id>.seg. Archiving is disabled if the directory
+// is not set.
+//
+// For each wallet, the archive holds all the transactions before the end of the last month archived for it (see
+// archivedUntil), and the transaction table only the ones from then on. Readers split their queries at that point, which
+// keeps them from seeing a transaction twice while it is being moved.
+//
+// Decoded segments are cached, up to agentza.archive.cache.max-transactions transactions in all, so that paging through the
+// archive doesn't decompress the same segment for every page. A segment that is rewritten gets a new version, and is
+// cached anew.
+@Component
+public class TransactionArchive {
+
+    public static final Comparator<ArchivedTransaction> ORDER =
+            Comparator.comparing(ArchivedTransaction::timestamp).thenComparing(ArchivedTransaction::transactionId);
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final Map<String, NavigableMap<YearMonth, Segment>> segments = new ConcurrentHashMap<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final Cache<Segment, List<ArchivedTransaction>> decoded;
+
+    public TransactionArchive(
+            @Value("${agentza.archive.dir:}") String directory,
+            @Value("${agentza.archive.cache.max-transactions:1000000}") long cacheMaxTransactions,
+            MeterRegistry meterRegistry
+    ) throws IOException {
+        this.directory = directory.isEmpty() ? null : Path.of(directory);
+        this.decoded = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxTransactions)
+                .<Segment, List<ArchivedTransaction>>weigher((segment, transactions) -> transactions.size())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, decoded, "archive-segments");
+        if (this.directory != null && Files.isDirectory(this.directory)) {
+            try (Stream<Path> files = Files.walk(this.directory, 2)) {
+                files.filter(file -> file.getFileName().toString().endsWith(SEGMENT_SUFFIX)).forEach(this::register);
+            }
+        }
+    }
+
+    private void register(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            YearMonth month = YearMonth.parse(file.getParent().getFileName().toString());
+            String walletId = URLDecoder.decode(name.substring(0, name.length() - SEGMENT_SUFFIX.length()), StandardCharsets.UTF_8);
+            segments.computeIfAbsent(walletId, id -> new ConcurrentSkipListMap<>()).put(month, new Segment(file, versions.incrementAndGet()));
+        } catch (DateTimeParseException e) {
+            // Not one of ours
+        }
+    }
+
+    public boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * The wallets that have archived transactions.
+     */
+    public Set<String> walletIds() {
+        return segments.keySet();
+    }
+
+    /**
+     * The time before which all the transactions of the wallet are in the archive, or null if none are.
+     */
+    public LocalDateTime archivedUntil(String walletId) {
+        NavigableMap<YearMonth, Segment> walletSegments = segments.get(walletId);
+        return walletSegments == null || walletSegments.isEmpty() ? null : walletSegments.lastKey().plusMonths(1).atDay(1).atStartOfDay();
+    }
+
+    /**
+     * Up to {@code limit} archived transactions of the wallet between {@code from} and {@code to} inclusive, in
+     * {@link #ORDER}. They start right after {@code position} or, when going {@code backward}, end right before it.
+     */
+    public List<ArchivedTransaction> find(String walletId, LocalDateTime from, LocalDateTime to, Position position, boolean backward, int limit) {
+        NavigableMap<YearMonth, Segment> walletSegments = segments.get(walletId);
+        if (walletSegments == null || from.isAfter(to)) {
+            return List.of();
+        }
+        // Only the months from the position on, or up to it when going backward
+        YearMonth first = YearMonth.from(from);
+        YearMonth last = YearMonth.from(to);
+        if (position != null) {
+            YearMonth positionMonth = YearMonth.from(position.timestamp());
+            if (backward && positionMonth.isBefore(last)) {
+                last = positionMonth;
+            } else if (!backward && positionMonth.isAfter(first)) {
+                first = positionMonth;
+            }
+        }
+        if (first.isAfter(last)) {
+            return List.of();
+        }
+        NavigableMap<YearMonth, Segment> months = walletSegments.subMap(first, true, last, true);
+        List<ArchivedTransaction> found = new ArrayList<>();
+        for (Segment segment : (backward ? months.descendingMap() : months).values()) {
+            List<ArchivedTransaction> transactions = read(segment);
+            if (backward) {
+                transactions = transactions.reversed();
+            }
+            for (ArchivedTransaction transaction : transactions) {
+                if (transaction.timestamp().isBefore(from) || transaction.timestamp().isAfter(to)) {
+                    continue;
+                }
+                if (position != null && (backward ? position.compareTo(transaction) <= 0 : position.compareTo(transaction) >= 0)) {
+                    continue;
+                }
+                found.add(transaction);
+                if (found.size() == limit) {
+                    return backward ? found.reversed() : found;
+                }
+            }
+        }
+        return backward ? found.reversed() : found;
+    }
+
+    /**
+     * Passes the archived transactions of the wallet between {@code from} and {@code to} inclusive to {@code consumer},
+     * in {@link #ORDER}, reading one segment at a time.
+     */
+    public void forEach(String walletId, LocalDateTime from, LocalDateTime to, Consumer<ArchivedTransaction> consumer) {
+        NavigableMap<YearMonth, Segment> walletSegments = segments.get(walletId);
+        if (walletSegments == null || from.isAfter(to)) {
+            return;
+        }
+        for (Segment segment : walletSegments.subMap(YearMonth.from(from), true, YearMonth.from(to), true).values()) {
+            for (ArchivedTransaction transaction : read(segment)) {
+                if (!transaction.timestamp().isBefore(from) && !transaction.timestamp().isAfter(to)) {
+                    consumer.accept(transaction);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the transactions of a wallet in a month to its segment, which is created if needed. Once this returns, the
+     * transactions are durable and readers look for the transactions of that month in the archive only.
+     */
+    void add(String walletId, YearMonth month, List<ArchivedTransaction> transactions) throws IOException {
+        Path segment = directory.resolve(month.toString()).resolve(URLEncoder.encode(walletId, StandardCharsets.UTF_8) + SEGMENT_SUFFIX);
+        // A transaction that is already in the segment, e.g. because the archiver stopped before deleting it from the
+        // table, is only kept once
+        TreeSet<ArchivedTransaction> all = new TreeSet<>(ORDER);
+        if (Files.exists(segment)) {
+            all.addAll(Segments.read(segment));
+        }
+        all.addAll(transactions);
+        Segments.write(segment, walletId, List.copyOf(all));
+        Segment previous = segments.computeIfAbsent(walletId, id -> new ConcurrentSkipListMap<>()).put(month, new Segment(segment, versions.incrementAndGet()));
+        if (previous != null) {
+            decoded.invalidate(previous);
+        }
+    }
+
+    // Not loaded with decoded.get(segment, loader): Caffeine runs the loader under a lock, which would pin a virtual thread
+    // to its carrier for the whole read.
+    private List<ArchivedTransaction> read(Segment segment) {
+        List<ArchivedTransaction> transactions = decoded.getIfPresent(segment);
+        if (transactions == null) {
+            try {
+                transactions = Segments.read(segment.file());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            decoded.put(segment, transactions);
+        }
+        return transactions;
+    }
+
+    // A version of a segment file. Every rewrite of the file is a new version.
+    private record Segment(Path file, long version) {}
+
+    /**
+     * The (timestamp, transactionId) of a transaction, to page through the archive from.
+     */
+    public record Position(LocalDateTime timestamp, String transactionId) {
+
+        int compareTo(ArchivedTransaction transaction) {
+            int byTimestamp = timestamp.compareTo(transaction.timestamp());
+            return byTimestamp != 0 ? byTimestamp : transactionId.compareTo(transaction.transactionId());
+        }
+    }
+}
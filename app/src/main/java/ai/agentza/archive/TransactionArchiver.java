@@ -0,0 +1,133 @@
+package ai.agentza.archive;
+
+import ai.agentza.payments.BalanceMode;
+import ai.agentza.payments.TransferWriter;
+import ai.agentza.payments.WalletBalances;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+// Periodically moves the transactions older than agentza.archive.max-age from the transaction table to the
+// TransactionArchive, a whole month of a wallet at a time, so that the table only holds the recent transactions.
+//
+// The months of a wallet are archived in order: the archive of a wallet must hold all of its transactions up to some
+// point. In JOURNAL mode, transactions are only archived once they are folded into the balance checkpoint of their wallet,
+// as balances are read from the journal tail after it.
+//
+// Each month is added to the archive and deleted from the table exclusively on the TransferWriter, so that
+// WalletRollups.rebuild, which reads both, never sees its transactions in both places.
+@Component
+public class TransactionArchiver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransactionArchiver.class);
+
+    private static final String SELECT_OLDEST = "select wallet_id, min(timestamp) from transaction where timestamp < ? group by wallet_id";
+    private static final String SELECT_CHECKPOINT = "select journal_sequence from balance_checkpoint where wallet_id = ?";
+    private static final String SELECT_MONTH = """
+            select transaction_id, type, timestamp, wallet_id, amount, currency, status, payer_description, payee_id, idempotency_key, journal_sequence
+            from transaction where wallet_id = ? and timestamp >= ? and timestamp < ?
+            order by timestamp, transaction_id
+            """;
+    private static final String DELETE = "delete from transaction where transaction_id = ?";
+
+    private final TransactionArchive transactionArchive;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransferWriter transferWriter;
+    private final BalanceMode balanceMode;
+    private final Duration maxAge;
+
+    public TransactionArchiver(
+            TransactionArchive transactionArchive,
+            JdbcTemplate jdbcTemplate,
+            TransferWriter transferWriter,
+            WalletBalances walletBalances,
+            @Value("${agentza.archive.max-age:90d}") Duration maxAge
+    ) {
+        this.transactionArchive = transactionArchive;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transferWriter = transferWriter;
+        this.balanceMode = walletBalances.getBalanceMode();
+        this.maxAge = maxAge;
+    }
+
+    @Scheduled(fixedDelayString = "${agentza.archive.interval:1h}")
+    public void scheduledArchive() {
+        if (transactionArchive.isEnabled()) {
+            archive(LocalDateTime.now().minus(maxAge));
+        }
+    }
+
+    /**
+     * Archives the transactions of the months that ended before {@code before}. Returns the number of transactions moved.
+     */
+    public int archive(LocalDateTime before) {
+        YearMonth until = YearMonth.from(before);
+        Timestamp cutoff = Timestamp.valueOf(until.atDay(1).atStartOfDay());
+        int archived = 0;
+        int wallets = 0;
+        for (var oldest : jdbcTemplate.query(SELECT_OLDEST, (rs, i) -> new Oldest(rs.getString(1), rs.getTimestamp(2).toLocalDateTime()), cutoff)) {
+            int walletArchived = archive(oldest.walletId(), YearMonth.from(oldest.timestamp()), until);
+            archived += walletArchived;
+            wallets += walletArchived > 0 ? 1 : 0;
+        }
+        if (archived > 0) {
+            LOG.info("Archived {} transactions of {} wallets from before {}", archived, wallets, until);
+        }
+        return archived;
+    }
+
+    private int archive(String walletId, YearMonth first, YearMonth until) {
+        long checkpoint = Long.MAX_VALUE;
+        if (balanceMode == BalanceMode.JOURNAL) {
+            checkpoint = jdbcTemplate.queryForList(SELECT_CHECKPOINT, Long.class, walletId).stream().findFirst().orElse(0L);
+        }
+        int archived = 0;
+        for (YearMonth month = first; month.isBefore(until); month = month.plusMonths(1)) {
+            List<ArchivedTransaction> transactions = jdbcTemplate.query(SELECT_MONTH, (rs, i) -> new ArchivedTransaction(
+                    rs.getString(1),
+                    rs.getString(2),
+                    rs.getTimestamp(3).toLocalDateTime(),
+                    rs.getString(4),
+                    rs.getLong(5),
+                    rs.getString(6),
+                    rs.getInt(7),
+                    rs.getString(8),
+                    rs.getString(9),
+                    rs.getString(10),
+                    rs.getLong(11)
+            ), walletId, Timestamp.valueOf(month.atDay(1).atStartOfDay()), Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay()));
+            if (transactions.isEmpty()) {
+                continue;
+            }
+            long lastSequence = checkpoint;
+            if (transactions.stream().anyMatch(transaction -> transaction.journalSequence() > lastSequence)) {
+                // Not compacted yet, this month and the following ones will be archived by a later run
+                break;
+            }
+            YearMonth archivedMonth = month;
+            transferWriter.runExclusive(() -> {
+                try {
+                    transactionArchive.add(walletId, archivedMonth, transactions);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to archive the transactions of " + walletId + " in " + archivedMonth, e);
+                }
+                jdbcTemplate.batchUpdate(DELETE, transactions.stream().map(transaction -> new Object[]{transaction.transactionId()}).toList());
+            }).join();
+            archived += transactions.size();
+        }
+        return archived;
+    }
+
+    private record Oldest(String walletId, LocalDateTime timestamp) {}
+}
@@ -0,0 +1,87 @@
+package ai.agentza.diagnostics;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+// Reports virtual threads that stay pinned to their carrier thread for longer than the threshold, e.g. because they block
+// inside a synchronized block. Each pinned virtual thread holds on to one of the few carrier threads, and a handful of
+// them is enough to stall every other request. Only runs when virtual threads are enabled.
+//
+// Pinning is recorded by JFR. The stack trace of each place that pins is logged once, with a count of all the pinned
+// events per place logged on shutdown.
+@Component
+public class VirtualThreadPinningMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final int MAX_FRAMES = 24;
+
+    private final Map<String, LongAdder> pinnedStacks = new ConcurrentHashMap<>();
+    private final RecordingStream recording;
+
+    public VirtualThreadPinningMonitor(
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${agentza.diagnostics.pinning-threshold:20ms}") Duration threshold
+    ) {
+        if (!virtualThreads) {
+            recording = null;
+            return;
+        }
+        recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::report);
+        recording.startAsync();
+        LOG.info("Reporting virtual threads pinned for longer than {}", threshold);
+    }
+
+    /**
+     * The number of times a virtual thread was pinned for longer than the threshold, by the stack trace it was pinned at.
+     */
+    public Map<String, Long> pinnedStacks() {
+        return pinnedStacks.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sum()));
+    }
+
+    private void report(RecordedEvent event) {
+        String stack = stackOf(event);
+        LongAdder count = pinnedStacks.computeIfAbsent(stack, ignored -> new LongAdder());
+        count.increment();
+        if (count.sum() == 1) {
+            LOG.warn("Virtual thread {} was pinned to its carrier for {} ms at\n{}", event.getThread().getJavaName(), event.getDuration().toMillis(), stack);
+        }
+    }
+
+    private static String stackOf(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "\t(no stack trace)";
+        }
+        return event.getStackTrace().getFrames().stream()
+                .limit(MAX_FRAMES)
+                .map(VirtualThreadPinningMonitor::format)
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static String format(RecordedFrame frame) {
+        return "\tat " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (recording == null) {
+            return;
+        }
+        recording.close();
+        pinnedStacks().forEach((stack, count) -> LOG.warn("Virtual threads were pinned {} times at\n{}", count, stack));
+    }
+}
@@ -0,0 +1,239 @@
+package ai.agentza.loader;
+
+import ai.agentza.payments.BalanceMode;
+import ai.agentza.payments.TransferWriter;
+import ai.agentza.payments.WalletBalances;
+import ai.agentza.payments.WalletRollups;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+// Generates a large dataset at startup, to performance-test against production volumes:
+//   mvn spring-boot:run -Dspring-boot.run.profiles=prod -Dspring-boot.run.arguments=--agentza.loader.agents=100000
+// Off unless agentza.loader.agents is set. Every agent gets wallets-per-agent wallets, an API key <prefix>-key-<n>, and
+// payees-per-agent payees paying into the default wallets of the agents after it. Every wallet then pays
+// transactions-per-wallet times into the payees of its agent, at random times over the last agentza.loader.history.
+//
+// Rows are inserted with JDBC batch statements by agentza.loader.threads workers, each loading chunk-agents agents at a
+// time in one database transaction. Balances and rollups are brought in line with the transactions once all of them are
+// loaded. The loader reports the rows/sec of each step, and stops the server when done unless agentza.loader.exit=false.
+//
+// Only an empty database is loaded, and the load is done before the web server starts, so no payment lane can cache the
+// balance of a wallet that is still being loaded. The whole load runs exclusively on the TransferWriter: the workers
+// commit their chunks in no particular order, and the BalanceCompactor must not see the journal until all of them have.
+@Component
+public class BulkLoader implements SmartInitializingSingleton, ApplicationRunner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkLoader.class);
+
+    private static final String INSERT_AGENT = "insert into agent (agent_id, name, default_wallet_id) values (?, ?, ?)";
+    private static final String INSERT_WALLET = "insert into wallet (wallet_id, agent_id, description, currency, balance, stripes) values (?, ?, ?, 'USD', ?, 0)";
+    private static final String INSERT_API_KEY = "insert into api_key (api_key, agent_id) values (?, ?)";
+    private static final String INSERT_PAYEE = "insert into payee (type, payee_id, payer_agent_id, agent_id) values ('AGENT', ?, ?, ?)";
+    private static final String INSERT_TRANSACTION =
+            "insert into transaction (transaction_id, type, timestamp, wallet_id, amount, currency, status, payer_description, payee_id) values (?, ?, ?, ?, ?, 'USD', 1, ?, ?)";
+    // The opening balances only cover the transactions in IN_PLACE mode, where the balance is kept on the wallet
+    private static final String APPLY_TRANSACTIONS = """
+            update wallet w set balance = balance + coalesce((select sum(t.amount) from transaction t where t.wallet_id = w.wallet_id), 0)
+            where w.wallet_id like ?
+            """;
+    private static final long OPENING_BALANCE = 1_000_000_000L;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TransferWriter transferWriter;
+    private final WalletRollups walletRollups;
+    private final BalanceMode balanceMode;
+    private final ConfigurableApplicationContext context;
+    private final int agents;
+    private final int walletsPerAgent;
+    private final int payeesPerAgent;
+    private final int transactionsPerWallet;
+    private final Duration history;
+    private final int threads;
+    private final int chunkAgents;
+    private final String prefix;
+    private final boolean exit;
+
+    public BulkLoader(
+            JdbcTemplate jdbcTemplate,
+            TransactionTemplate transactionTemplate,
+            TransferWriter transferWriter,
+            WalletRollups walletRollups,
+            WalletBalances walletBalances,
+            ConfigurableApplicationContext context,
+            @Value("${agentza.loader.agents:0}") int agents,
+            @Value("${agentza.loader.wallets-per-agent:2}") int walletsPerAgent,
+            @Value("${agentza.loader.payees-per-agent:5}") int payeesPerAgent,
+            @Value("${agentza.loader.transactions-per-wallet:100}") int transactionsPerWallet,
+            @Value("${agentza.loader.history:365d}") Duration history,
+            @Value("${agentza.loader.threads:${spring.datasource.hikari.maximum-pool-size:10}}") int threads,
+            @Value("${agentza.loader.chunk-agents:100}") int chunkAgents,
+            @Value("${agentza.loader.prefix:load}") String prefix,
+            @Value("${agentza.loader.exit:true}") boolean exit
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.transferWriter = transferWriter;
+        this.walletRollups = walletRollups;
+        this.balanceMode = walletBalances.getBalanceMode();
+        this.context = context;
+        this.agents = agents;
+        this.walletsPerAgent = Math.max(1, walletsPerAgent);
+        this.payeesPerAgent = Math.max(1, payeesPerAgent);
+        this.transactionsPerWallet = transactionsPerWallet;
+        this.history = history;
+        this.threads = threads;
+        this.chunkAgents = chunkAgents;
+        this.prefix = prefix;
+        this.exit = exit;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (agents <= 0) {
+            return;
+        }
+        long existing = jdbcTemplate.queryForObject("select count(*) from agent", Long.class);
+        if (existing > 0) {
+            throw new IllegalStateException("Refusing to load into a database that already has " + existing + " agents");
+        }
+        transferWriter.runExclusive(this::load).join();
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (agents > 0 && exit) {
+            System.exit(SpringApplication.exit(context));
+        }
+    }
+
+    // Runs on the TransferWriter thread, in its transaction
+    private void load() {
+        LOG.info("Loading {} agents with {} wallets, {} payees and {} transactions per wallet each, on {} threads",
+                agents, walletsPerAgent, payeesPerAgent, transactionsPerWallet, threads);
+        Counts counts = new Counts();
+        LocalDateTime now = LocalDateTime.now();
+
+        long start = System.nanoTime();
+        try (ExecutorService workers = Executors.newFixedThreadPool(threads)) {
+            List<Future<?>> chunks = new ArrayList<>();
+            for (int first = 0; first < agents; first += chunkAgents) {
+                int from = first;
+                int to = Math.min(agents, first + chunkAgents);
+                chunks.add(workers.submit(() -> transactionTemplate.executeWithoutResult(status -> loadChunk(from, to, now, counts))));
+            }
+            for (Future<?> chunk : chunks) {
+                // Fails the load on the first failed chunk
+                chunk.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to load agents", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading agents", e);
+        }
+        report("Inserted", counts.total(), "rows", start);
+        LOG.info("{} agents, {} wallets, {} API keys, {} payees, {} transactions",
+                counts.agents.sum(), counts.wallets.sum(), counts.apiKeys.sum(), counts.payees.sum(), counts.transactions.sum());
+
+        if (balanceMode == BalanceMode.IN_PLACE) {
+            start = System.nanoTime();
+            int wallets = jdbcTemplate.update(APPLY_TRANSACTIONS, prefix + "-wallet-%");
+            report("Updated the balances of", wallets, "wallets", start);
+        }
+
+        start = System.nanoTime();
+        report("Rebuilt", walletRollups.rebuild(), "rollups", start);
+    }
+
+    private void loadChunk(int from, int to, LocalDateTime now, Counts counts) {
+        List<Object[]> agentRows = new ArrayList<>();
+        List<Object[]> walletRows = new ArrayList<>();
+        List<Object[]> apiKeyRows = new ArrayList<>();
+        List<Object[]> payeeRows = new ArrayList<>();
+        List<Object[]> transactionRows = new ArrayList<>();
+        SplittableRandom random = new SplittableRandom(from);
+        long historyMillis = history.toMillis();
+
+        for (int agent = from; agent < to; agent++) {
+            String agentId = agentId(agent);
+            agentRows.add(new Object[]{agentId, "Agent " + agent, walletId(agent, 0)});
+            apiKeyRows.add(new Object[]{prefix + "-key-" + agent, agentId});
+            String[] payeeIds = new String[payeesPerAgent];
+            for (int payee = 0; payee < payeesPerAgent; payee++) {
+                payeeIds[payee] = prefix + "-payee-" + agent + "-" + payee;
+                payeeRows.add(new Object[]{payeeIds[payee], agentId, agentId((agent + payee + 1) % agents)});
+            }
+            for (int wallet = 0; wallet < walletsPerAgent; wallet++) {
+                String walletId = walletId(agent, wallet);
+                walletRows.add(new Object[]{walletId, agentId, "Wallet " + wallet + " of agent " + agent, OPENING_BALANCE});
+                for (int i = 0; i < transactionsPerWallet; i++) {
+                    int payee = random.nextInt(payeesPerAgent);
+                    String targetWalletId = walletId((agent + payee + 1) % agents, 0);
+                    Timestamp timestamp = Timestamp.valueOf(now.minusNanos(random.nextLong(historyMillis + 1) * 1_000_000));
+                    long amount = 1 + random.nextInt(10_000);
+                    String transactionId = walletId + "-" + i;
+                    transactionRows.add(new Object[]{transactionId + "-w", "WITHDRAWAL", timestamp, walletId, -amount, null, payeeIds[payee]});
+                    transactionRows.add(new Object[]{transactionId + "-d", "DEPOSIT", timestamp, targetWalletId, amount, "Agent " + agent, null});
+                }
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_AGENT, agentRows);
+        jdbcTemplate.batchUpdate(INSERT_WALLET, walletRows);
+        jdbcTemplate.batchUpdate(INSERT_API_KEY, apiKeyRows);
+        jdbcTemplate.batchUpdate(INSERT_PAYEE, payeeRows);
+        jdbcTemplate.batchUpdate(INSERT_TRANSACTION, transactionRows);
+        counts.agents.add(agentRows.size());
+        counts.wallets.add(walletRows.size());
+        counts.apiKeys.add(apiKeyRows.size());
+        counts.payees.add(payeeRows.size());
+        counts.transactions.add(transactionRows.size());
+    }
+
+    private String agentId(int agent) {
+        return prefix + "-agent-" + agent;
+    }
+
+    private String walletId(int agent, int wallet) {
+        return prefix + "-wallet-" + agent + "-" + wallet;
+    }
+
+    private static void report(String step, long count, String rows, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        LOG.info("{} {} {} in {} s, {} {}/s", step, count, rows, String.format("%.1f", seconds), Math.round(count / Math.max(seconds, 1e-3)), rows);
+    }
+
+    private static class Counts {
+        final LongAdder agents = new LongAdder();
+        final LongAdder wallets = new LongAdder();
+        final LongAdder apiKeys = new LongAdder();
+        final LongAdder payees = new LongAdder();
+        final LongAdder transactions = new LongAdder();
+
+        long total() {
+            return agents.sum() + wallets.sum() + apiKeys.sum() + payees.sum() + transactions.sum();
+        }
+    }
+}
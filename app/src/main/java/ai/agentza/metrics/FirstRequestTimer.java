@@ -0,0 +1,49 @@
+package ai.agentza.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Reports the time from the start of the JVM to the end of the first successful request, i.e. how long a new instance
+// takes to serve traffic, as the agentza.startup.first.request gauge and in the log. Unlike application.ready.time, it
+// includes the work done after the context is ready, like seeding the database, and the first request itself. Requests
+// that fail don't count: before the Initializer has run, every API key is rejected.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class FirstRequestTimer extends OncePerRequestFilter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FirstRequestTimer.class);
+
+    private final AtomicLong firstRequestMillis = new AtomicLong(-1);
+
+    public FirstRequestTimer(MeterRegistry meterRegistry) {
+        TimeGauge.builder("agentza.startup.first.request", this, TimeUnit.MILLISECONDS, timer -> timer.firstRequestMillis.get() < 0 ? Double.NaN : timer.firstRequestMillis.get())
+                .description("Time from the start of the JVM to the end of the first successful request")
+                .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        filterChain.doFilter(request, response);
+        if (firstRequestMillis.get() < 0 && response.getStatus() < 400) {
+            long millis = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+            if (firstRequestMillis.compareAndSet(-1, millis)) {
+                LOG.info("Served the first request {} ms after the JVM started", millis);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package ai.agentza.metrics;
+
+import org.hibernate.SessionEventListener;
+
+// Counts the JDBC statements and flushes of the Hibernate sessions opened by the current thread, so that they can be
+// reported per request by the RequestMetricsFilter. Hibernate creates one listener per session (see
+// hibernate.session.events.auto), and a request may open several sessions, hence the counts are kept per thread.
+public class PersistenceCounters implements SessionEventListener {
+
+    private static final ThreadLocal<Counts> COUNTS = new ThreadLocal<>();
+
+    /**
+     * Starts counting for the current thread, until {@link #stop()} is called.
+     */
+    static Counts start() {
+        Counts counts = new Counts();
+        COUNTS.set(counts);
+        return counts;
+    }
+
+    static void stop() {
+        COUNTS.remove();
+    }
+
+    @Override
+    public void jdbcExecuteStatementEnd() {
+        Counts counts = COUNTS.get();
+        if (counts != null) {
+            counts.statements++;
+        }
+    }
+
+    @Override
+    public void jdbcExecuteBatchEnd() {
+        Counts counts = COUNTS.get();
+        if (counts != null) {
+            counts.statements++;
+        }
+    }
+
+    @Override
+    public void flushEnd(int numberOfEntities, int numberOfCollections) {
+        Counts counts = COUNTS.get();
+        if (counts != null) {
+            counts.flushes++;
+        }
+    }
+
+    static final class Counts {
+        int statements;
+        int flushes;
+    }
+}
@@ -0,0 +1,81 @@
+package ai.agentza.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Records, per request and tagged like http.server.requests with the method and URI template:
+//   agentza.http.request.statements: JDBC statements executed by Hibernate
+//   agentza.http.request.flushes:    Hibernate flushes
+//   agentza.http.request.allocated:  bytes allocated by the thread serving the request
+// Runs ahead of the security filters, so that authentication is part of the request.
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RequestMetricsFilter extends OncePerRequestFilter {
+
+    private static final com.sun.management.ThreadMXBean THREADS = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final MeterRegistry meterRegistry;
+    // By method and URI template, so that the summaries are only built and registered once
+    private final Map<Endpoint, Summaries> summaries = new ConcurrentHashMap<>();
+
+    public RequestMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        PersistenceCounters.Counts counts = PersistenceCounters.start();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            PersistenceCounters.stop();
+            long allocatedAfter = THREADS.getCurrentThreadAllocatedBytes();
+
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+            Summaries endpoint = summaries.computeIfAbsent(new Endpoint(request.getMethod(), uri), this::register);
+            endpoint.statements().record(counts.statements);
+            endpoint.flushes().record(counts.flushes);
+            // -1 when allocation tracking is not supported for the current thread
+            if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                endpoint.allocated().record(allocatedAfter - allocatedBefore);
+            }
+        }
+    }
+
+    private Summaries register(Endpoint endpoint) {
+        return new Summaries(
+                summary("agentza.http.request.statements", null, endpoint),
+                summary("agentza.http.request.flushes", null, endpoint),
+                summary("agentza.http.request.allocated", BaseUnits.BYTES, endpoint)
+        );
+    }
+
+    private DistributionSummary summary(String name, String baseUnit, Endpoint endpoint) {
+        return DistributionSummary.builder(name)
+                .baseUnit(baseUnit)
+                .tag("method", endpoint.method())
+                .tag("uri", endpoint.uri())
+                .register(meterRegistry);
+    }
+
+    private record Endpoint(String method, String uri) {}
+
+    private record Summaries(DistributionSummary statements, DistributionSummary flushes, DistributionSummary allocated) {}
+}
@@ -0,0 +1,37 @@
+package ai.agentza.metrics;
+
+import ai.agentza.payments.TransferFailedException.Reason;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+// Counts the transfers requested through the API by outcome, and the failed ones by reason:
+//   agentza_transfers_total{outcome="succeeded"}
+//   agentza_transfers_total{outcome="failed",reason="insufficient_funds"}
+@Component
+public class TransferMetrics {
+
+    private static final String NAME = "agentza.transfers";
+
+    private final Counter succeeded;
+    private final Map<Reason, Counter> failed = new EnumMap<>(Reason.class);
+
+    public TransferMetrics(MeterRegistry registry) {
+        this.succeeded = Counter.builder(NAME).tag("outcome", "succeeded").tag("reason", "none").register(registry);
+        for (Reason reason : Reason.values()) {
+            failed.put(reason, Counter.builder(NAME).tag("outcome", "failed").tag("reason", reason.name().toLowerCase(Locale.ROOT)).register(registry));
+        }
+    }
+
+    public void succeeded() {
+        succeeded.increment();
+    }
+
+    public void failed(Reason reason) {
+        failed.get(reason).increment();
+    }
+}
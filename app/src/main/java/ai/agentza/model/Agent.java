@@ -1,9 +1,11 @@
 package ai.agentza.model;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Id;
 
 @Entity
+@EntityListeners(PayeeRoutes.EntityListener.class)
 public class Agent {
 
     @Id
@@ -1,9 +1,12 @@
 package ai.agentza.model;
 
+import ai.agentza.security.ApiKeyAuthenticationService;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Id;
 
 @Entity
+@EntityListeners(ApiKeyAuthenticationService.EntityListener.class)
 public class ApiKey {
 
     @Id
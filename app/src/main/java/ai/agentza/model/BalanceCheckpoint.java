@@ -0,0 +1,52 @@
+package ai.agentza.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+
+import java.time.LocalDateTime;
+
+// The balance of a wallet as of a position in the transaction journal, when balances are kept in JOURNAL mode. The
+// current balance is this balance plus the amounts of the transactions of the wallet after journalSequence.
+@Entity
+public class BalanceCheckpoint {
+
+    @Id
+    private String walletId;
+    private long balance;
+    private long journalSequence;
+    private LocalDateTime updatedAt;
+
+    protected BalanceCheckpoint() {}
+    public BalanceCheckpoint(String walletId, long balance, long journalSequence, LocalDateTime updatedAt) {
+        this.walletId = walletId;
+        this.balance = balance;
+        this.journalSequence = journalSequence;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getWalletId() {
+        return walletId;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    @Override public int hashCode() { return walletId.hashCode(); }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        BalanceCheckpoint checkpoint = (BalanceCheckpoint) obj;
+        return walletId.equals(checkpoint.walletId);
+    }
+}
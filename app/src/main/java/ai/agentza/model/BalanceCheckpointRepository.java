@@ -0,0 +1,27 @@
+package ai.agentza.model;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface BalanceCheckpointRepository extends CrudRepository<BalanceCheckpoint, String> {
+
+    // The new checkpoint balance of every wallet that has transactions after its checkpoint, up to (and including)
+    // journalSequence. Wallets without a checkpoint start from the opening balance of the Wallet row.
+    @Query("""
+            select new ai.agentza.model.BalanceCheckpointRepository$Advance(t.walletId, coalesce(c.balance, w.balance) + sum(t.amount))
+            from Transaction t
+            join Wallet w on w.walletId = t.walletId
+            left join BalanceCheckpoint c on c.walletId = t.walletId
+            where t.journalSequence > coalesce(c.journalSequence, 0) and t.journalSequence <= :journalSequence
+            group by t.walletId, c.balance, w.balance
+            """)
+    List<Advance> findAdvancesUpTo(@Param("journalSequence") long journalSequence);
+
+    @Query("select coalesce(max(t.journalSequence), 0) from Transaction t")
+    long findLastJournalSequence();
+
+    record Advance(String walletId, long balance) {}
+}
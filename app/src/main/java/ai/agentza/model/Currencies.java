@@ -0,0 +1,23 @@
+package ai.agentza.model;
+
+import java.util.Currency;
+
+/**
+ * Amounts of money are represented as a {@code long} count of the minor unit of their currency (e.g. cents for USD),
+ * which keeps them exact and allocation free. The scale of a currency is the number of decimal places between its
+ * minor and major units, so an amount of 12345 with a scale of 2 is 123.45.
+ */
+public final class Currencies {
+
+    private Currencies() {}
+
+    /**
+     * The scale of the currency, or 0 without one: the currency columns are nullable, and the archive keeps them as they were.
+     */
+    public static int scale(String currency) {
+        if (currency == null) {
+            return 0;
+        }
+        return Currency.getInstance(currency).getDefaultFractionDigits();
+    }
+}
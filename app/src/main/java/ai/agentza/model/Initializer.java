@@ -9,7 +9,8 @@ import org.springframework.stereotype.Component;
 
 import java.util.List;
 
-// This class is temporary, only used to pre-populate the database with some data for querying.
+// This class is temporary, only used to pre-populate the database with some data for querying. A database that already
+// has agents, e.g. a durable one from a previous run, is left alone.
 @Component
 public class Initializer {
 
@@ -27,11 +28,14 @@ public class Initializer {
 
     @EventListener(ApplicationReadyEvent.class)
     public void populatePayees() {
+        if (agentRepository.count() > 0) {
+            return;
+        }
         List<String> agentIds = List.of("foo", "bar", "baz", "qux", "quux", "corge", "grault", "garply", "waldo", "fred", "plugh", "xyzzy", "thud");
 
         for (String agentId : agentIds) {
             Agent agent = agentRepository.save(new Agent(agentId, "Agent " + agentId.toUpperCase(), null));
-            Wallet wallet = walletRepository.save(new Wallet(agentId + "-default-wallet", agentId, "Default wallet for " + agent.getName(), "USD",1000.0));
+            Wallet wallet = walletRepository.save(new Wallet(agentId + "-default-wallet", agentId, "Default wallet for " + agent.getName(), "USD", 100_000));
 
             agent.setDefaultWalletId(wallet.getWalletId());
             agentRepository.save(agent);
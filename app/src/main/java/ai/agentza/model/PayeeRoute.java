@@ -0,0 +1,5 @@
+package ai.agentza.model;
+
+// Where payments to an agent payee go: the wallet it pays into, which is either the payee's own wallet or the default
+// wallet of its agent. Cached by PayeeRoutes.
+public record PayeeRoute(String payerAgentId, String payeeAgentId, String walletId, String currency, int stripes) {}
@@ -0,0 +1,112 @@
+package ai.agentza.model;
+
+import ai.agentza.model.payees.Payee;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+// The routes of agent payees by payee id, so that a payment doesn't have to resolve the payee, its agent and the target
+// wallet again. Routes hardly ever change, and agents keep paying the same payees.
+//
+// A route is dropped once a change to its payee, the payee's agent or the target wallet is committed. Entity changes are
+// picked up by the EntityListener, changes made with bulk queries must invalidate the routes themselves.
+// A route loaded while a change was in flight may be stale, so it is only kept if no change was committed in the
+// meantime: every invalidation bumps the generation before it drops anything, and put checks the generation after.
+@Component
+public class PayeeRoutes {
+
+    private final Cache<String, PayeeRoute> routes;
+    private final AtomicLong generation = new AtomicLong();
+
+    public PayeeRoutes(@Value("${agentza.payments.routes.max-size:100000}") long maxSize, MeterRegistry meterRegistry) {
+        this.routes = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, routes, "payee-routes");
+    }
+
+    public PayeeRoute get(String payeeId) {
+        return routes.getIfPresent(payeeId);
+    }
+
+    /**
+     * The generation to pass to {@link #put}, read before the route is loaded.
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    public void put(String payeeId, PayeeRoute route, long loadedAt) {
+        routes.put(payeeId, route);
+        // A change committed since the route was loaded has bumped the generation, but may have dropped the routes before
+        // this one was put
+        if (generation.get() != loadedAt) {
+            routes.asMap().remove(payeeId, route);
+        }
+    }
+
+    public void invalidatePayee(String payeeId) {
+        afterCommit(() -> {
+            generation.incrementAndGet();
+            routes.invalidate(payeeId);
+        });
+    }
+
+    public void invalidateAgent(String agentId) {
+        afterCommit(() -> invalidateIf(route -> route.payeeAgentId().equals(agentId)));
+    }
+
+    public void invalidateWallet(String walletId) {
+        afterCommit(() -> invalidateIf(route -> route.walletId().equals(walletId)));
+    }
+
+    private void invalidateIf(Predicate<PayeeRoute> stale) {
+        generation.incrementAndGet();
+        routes.asMap().values().removeIf(stale);
+    }
+
+    private static void afterCommit(Runnable invalidation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidation.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidation.run();
+            }
+        });
+    }
+
+    // Hibernate creates its own instance of an entity listener, with the routes injected
+    public static class EntityListener {
+
+        private final PayeeRoutes payeeRoutes;
+
+        public EntityListener(PayeeRoutes payeeRoutes) {
+            this.payeeRoutes = payeeRoutes;
+        }
+
+        @PostUpdate
+        @PostRemove
+        void changed(Object entity) {
+            switch (entity) {
+                case Payee payee -> payeeRoutes.invalidatePayee(payee.getPayeeId());
+                case Agent agent -> payeeRoutes.invalidateAgent(agent.getAgentId());
+                case Wallet wallet -> payeeRoutes.invalidateWallet(wallet.getWalletId());
+                default -> {}
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package ai.agentza.model;
+
+import ai.agentza.model.payees.AgentPayee;
+
+// Everything a payment from a wallet to an agent payee needs, loaded in one query by WalletRepository.findPaymentContext.
+// The route is null if the payee doesn't exist, isn't one of the payer's, isn't an agent payee or doesn't resolve to an
+// existing wallet.
+public record PaymentContext(Agent payer, Wallet source, PayeeRoute route) {
+
+    public PaymentContext(Agent payer, Wallet source, AgentPayee payee, Wallet target) {
+        this(payer, source, payee == null || target == null ? null : new PayeeRoute(
+                payee.getPayerAgentId(), payee.getAgentId(), target.getWalletId(), target.getCurrency(), target.getStripes()
+        ));
+    }
+
+    public PaymentContext(Agent payer, Wallet source) {
+        this(payer, source, (PayeeRoute) null);
+    }
+
+    public PaymentContext withRoute(PayeeRoute route) {
+        return new PaymentContext(payer, source, route);
+    }
+}
@@ -1,18 +1,25 @@
 package ai.agentza.model;
 
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 
 @Entity
+@EntityListeners(PayeeRoutes.EntityListener.class)
+@Table(indexes = @Index(name = "wallet_agent_idx", columnList = "agentId"))
 public class Wallet {
     @Id private String walletId;
     private String agentId;
     private String description;
     private String currency;
-    private Double balance;
+    private long balance;
+    // Number of sub-balances the wallet is split into, see WalletStripe. 0 or 1 when the wallet is not striped.
+    private int stripes;
 
     protected Wallet() {}
-    public Wallet(String walletId, String agentId, String description, String currency, Double balance) {
+    public Wallet(String walletId, String agentId, String description, String currency, long balance) {
         this.walletId = walletId;
         this.agentId = agentId;
         this.description = description;
@@ -42,15 +49,23 @@ public class Wallet {
         return description;
     }
 
-    public Double getBalance() {
+    public long getBalance() {
         return balance;
     }
 
+    public int getScale() {
+        return Currencies.scale(currency);
+    }
+
+    public int getStripes() {
+        return stripes;
+    }
+
     public String getWalletId() {
         return walletId;
     }
 
-    public void setBalance(double v) {
+    public void setBalance(long v) {
         this.balance = v;
     }
 }
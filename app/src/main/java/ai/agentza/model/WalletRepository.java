@@ -1,9 +1,52 @@
 package ai.agentza.model;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface WalletRepository extends CrudRepository<Wallet, String> {
     List<Wallet> findByAgentId(String agentId);
+
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("update Wallet w set w.stripes = :stripes where w.walletId = :walletId")
+    int updateStripes(@Param("walletId") String walletId, @Param("stripes") int stripes);
+
+    // The balance of a wallet in JOURNAL mode: its latest checkpoint (or its opening balance) plus the journal tail.
+    @Query("""
+            select coalesce(c.balance, w.balance) + coalesce((
+                select sum(t.amount) from Transaction t
+                where t.walletId = w.walletId and t.journalSequence > coalesce(c.journalSequence, 0)
+            ), 0)
+            from Wallet w
+            left join BalanceCheckpoint c on c.walletId = w.walletId
+            where w.walletId = :walletId
+            """)
+    Optional<Long> findJournalBalance(@Param("walletId") String walletId);
+
+    // Resolves the payer, the source wallet, the payee and the wallet it pays into with one query. The source wallet and
+    // the payee are only found if they belong to the payer. A payee without a wallet of its own pays into the default
+    // wallet of its agent.
+    @Query("""
+            select new ai.agentza.model.PaymentContext(payer, source, payee, target)
+            from Agent payer
+            join Wallet source on source.walletId = :walletId and source.agentId = payer.agentId
+            left join AgentPayee payee on payee.payeeId = :payeeId and payee.payerAgentId = payer.agentId
+            left join Agent payeeAgent on payee.walletId is null and payeeAgent.agentId = payee.agentId
+            left join Wallet target on target.walletId = coalesce(payee.walletId, payeeAgent.defaultWalletId)
+            where payer.agentId = :agentId
+            """)
+    Optional<PaymentContext> findPaymentContext(@Param("agentId") String agentId, @Param("walletId") String walletId, @Param("payeeId") String payeeId);
+
+    // The payer and the source wallet of a payment whose payee route is already known, see PayeeRoutes
+    @Query("""
+            select new ai.agentza.model.PaymentContext(payer, source)
+            from Agent payer
+            join Wallet source on source.walletId = :walletId and source.agentId = payer.agentId
+            where payer.agentId = :agentId
+            """)
+    Optional<PaymentContext> findPaymentSource(@Param("agentId") String agentId, @Param("walletId") String walletId);
 }
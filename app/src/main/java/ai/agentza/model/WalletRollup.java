@@ -0,0 +1,68 @@
+package ai.agentza.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+// The totals of the transactions of a wallet over a day or a month, and its balance at the end of it. Kept up to date by
+// the TransferWriter as it persists transfers, see WalletRollups. Periods without transactions have no row.
+@Entity
+@IdClass(WalletRollup.Key.class)
+public class WalletRollup {
+
+    @Id private String walletId;
+    @Id private Period period;
+    @Id private LocalDate periodStart;
+    private long transactions;
+    private long totalIn;
+    private long totalOut;
+    private long closingBalance;
+
+    protected WalletRollup() {}
+
+    public String getWalletId() {
+        return walletId;
+    }
+
+    public Period getPeriod() {
+        return period;
+    }
+
+    public LocalDate getPeriodStart() {
+        return periodStart;
+    }
+
+    public long getTransactions() {
+        return transactions;
+    }
+
+    public long getTotalIn() {
+        return totalIn;
+    }
+
+    public long getTotalOut() {
+        return totalOut;
+    }
+
+    public long getClosingBalance() {
+        return closingBalance;
+    }
+
+    public enum Period {
+        DAY,
+        MONTH;
+
+        public LocalDate startOf(LocalDate date) {
+            return this == DAY ? date : date.withDayOfMonth(1);
+        }
+
+        public LocalDate next(LocalDate start) {
+            return this == DAY ? start.plusDays(1) : start.plusMonths(1);
+        }
+    }
+
+    public record Key(String walletId, Period period, LocalDate periodStart) implements Serializable {}
+}
@@ -0,0 +1,10 @@
+package ai.agentza.model;
+
+import org.springframework.data.repository.CrudRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public interface WalletRollupRepository extends CrudRepository<WalletRollup, WalletRollup.Key> {
+    List<WalletRollup> findByWalletIdAndPeriodAndPeriodStartBetweenOrderByPeriodStart(String walletId, WalletRollup.Period period, LocalDate from, LocalDate to);
+}
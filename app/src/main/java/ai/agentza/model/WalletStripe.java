@@ -0,0 +1,39 @@
+package ai.agentza.model;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+
+import java.io.Serializable;
+
+// One of the sub-balances of a striped wallet. Stripe 0 of a wallet is its Wallet row, stripes 1 to stripes - 1 are rows
+// of this entity, and the balance of the wallet is the sum of all of them.
+@Entity
+@IdClass(WalletStripe.Key.class)
+public class WalletStripe {
+
+    @Id private String walletId;
+    @Id private int stripe;
+    private long balance;
+
+    protected WalletStripe() {}
+    public WalletStripe(String walletId, int stripe, long balance) {
+        this.walletId = walletId;
+        this.stripe = stripe;
+        this.balance = balance;
+    }
+
+    public String getWalletId() {
+        return walletId;
+    }
+
+    public int getStripe() {
+        return stripe;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public record Key(String walletId, int stripe) implements Serializable {}
+}
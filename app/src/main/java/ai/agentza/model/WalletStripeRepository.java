@@ -0,0 +1,11 @@
+package ai.agentza.model;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+public interface WalletStripeRepository extends CrudRepository<WalletStripe, WalletStripe.Key> {
+
+    @Query("select coalesce(sum(s.balance), 0) from WalletStripe s where s.walletId = :walletId")
+    long sumBalances(@Param("walletId") String walletId);
+}
@@ -1,5 +1,6 @@
 package ai.agentza.model.payees;
 
+import ai.agentza.model.PayeeRoutes;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import jakarta.persistence.*;
@@ -8,8 +9,10 @@ import org.hibernate.annotations.UuidGenerator;
 import java.util.ArrayList;
 
 @Entity
+@EntityListeners(PayeeRoutes.EntityListener.class)
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "type", discriminatorType = DiscriminatorType.STRING)
+@Table(indexes = @Index(name = "payee_payer_agent_idx", columnList = "payerAgentId"))
 @JsonTypeInfo(use = JsonTypeInfo.Id.NAME, include = JsonTypeInfo.As.PROPERTY, property = "type")
 @JsonSubTypes({
         @JsonSubTypes.Type(value=AgentPayee.class, name = "AGENT"),
@@ -10,7 +10,7 @@ import java.time.LocalDateTime;
 public class Deposit extends Transaction {
     private String payerDescription;
     protected Deposit() {}
-    public Deposit(LocalDateTime timestamp, String walletId, Double amount, String currency, TransactionStatus status, String payerDescription) {
+    public Deposit(LocalDateTime timestamp, String walletId, long amount, String currency, TransactionStatus status, String payerDescription) {
         super(timestamp, walletId, amount, currency, status);
         this.payerDescription = payerDescription;
     }
@@ -0,0 +1,41 @@
+package ai.agentza.model.transactions;
+
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+// The Idempotency-Key of a withdrawal, unique per wallet, and where to find the withdrawal. Written by the TransferWriter
+// with the withdrawal, and kept when the withdrawal is moved to the TransactionArchive, so that a key can't be reused once
+// its withdrawal is archived.
+@Entity
+@IdClass(IdempotencyKey.Key.class)
+public class IdempotencyKey {
+
+    @Id private String walletId;
+    @Id private String idempotencyKey;
+    private String transactionId;
+    private LocalDateTime timestamp;
+
+    protected IdempotencyKey() {}
+
+    public String getWalletId() {
+        return walletId;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public record Key(String walletId, String idempotencyKey) implements Serializable {}
+}
@@ -0,0 +1,6 @@
+package ai.agentza.model.transactions;
+
+import org.springframework.data.repository.CrudRepository;
+
+public interface IdempotencyKeyRepository extends CrudRepository<IdempotencyKey, IdempotencyKey.Key> {
+}
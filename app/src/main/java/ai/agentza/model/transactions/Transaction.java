@@ -1,5 +1,6 @@
 package ai.agentza.model.transactions;
 
+import ai.agentza.model.Currencies;
 import jakarta.persistence.*;
 import org.hibernate.annotations.UuidGenerator;
 
@@ -8,18 +9,28 @@ import java.time.LocalDateTime;
 @Entity
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "type", discriminatorType = DiscriminatorType.STRING)
+@Table(
+        indexes = {
+                @Index(name = "transaction_wallet_journal_idx", columnList = "walletId, journalSequence"),
+                @Index(name = "transaction_wallet_timestamp_idx", columnList = "walletId, timestamp"),
+        },
+        uniqueConstraints = @UniqueConstraint(name = "transaction_wallet_idempotency_key_uk", columnNames = {"wallet_id", "idempotency_key"})
+)
 public abstract class Transaction {
 
     @Id @UuidGenerator private String transactionId;
+    // Assigned by the database in insertion order. Balance checkpoints refer to a position in the journal by this number.
+    @Column(columnDefinition = "bigint generated always as identity", insertable = false, updatable = false)
+    private long journalSequence;
     private LocalDateTime timestamp;
     private String walletId;
-    private Double amount;
+    private long amount;
     private String currency;
     private TransactionStatus status;
 
     protected Transaction() {}
 
-    public Transaction(LocalDateTime timestamp, String walletId, Double amount, String currency, TransactionStatus status) {
+    public Transaction(LocalDateTime timestamp, String walletId, long amount, String currency, TransactionStatus status) {
         this.timestamp = timestamp;
         this.walletId = walletId;
         this.amount = amount;
@@ -38,6 +49,10 @@ public abstract class Transaction {
         return transactionId;
     }
 
+    public long getJournalSequence() {
+        return journalSequence;
+    }
+
     public LocalDateTime getTimestamp() {
         return timestamp;
     }
@@ -46,7 +61,7 @@ public abstract class Transaction {
         return walletId;
     }
 
-    public Double getAmount() {
+    public long getAmount() {
         return amount;
     }
 
@@ -54,6 +69,10 @@ public abstract class Transaction {
         return currency;
     }
 
+    public int getScale() {
+        return Currencies.scale(currency);
+    }
+
     public TransactionStatus getStatus() {
         return status;
     }
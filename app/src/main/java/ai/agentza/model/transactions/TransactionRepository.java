@@ -1,8 +1,31 @@
 package ai.agentza.model.transactions;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
 
 public interface TransactionRepository extends CrudRepository<Transaction, String> {
-    Iterable<Transaction> findByWalletId(String walletId);
-}
+    Window<Transaction> findByWalletIdAndTimestampBetween(String walletId, LocalDateTime from, LocalDateTime to, ScrollPosition position, Limit limit, Sort sort);
+
+    // Must be consumed inside a transaction. Rows are fetched from the database cursor in chunks as the stream advances.
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    Stream<Transaction> streamByWalletIdAndTimestampBetweenOrderByTimestampAscTransactionIdAsc(String walletId, LocalDateTime from, LocalDateTime to);
 
+
+    @Query("select w from Withdrawal w where w.idempotencyKey is not null and w.timestamp >= :since order by w.timestamp desc")
+    List<Withdrawal> findIdempotentWithdrawalsSince(@Param("since") LocalDateTime since, Limit limit);
+}
@@ -9,9 +9,11 @@ import java.time.LocalDateTime;
 @DiscriminatorValue("WITHDRAWAL")
 public class Withdrawal extends Transaction {
     private String payeeId;
+    // The Idempotency-Key of the request that created the withdrawal, unique per wallet
+    private String idempotencyKey;
 
     protected Withdrawal() {}
-    public Withdrawal(LocalDateTime timestamp, String walletId, Double amount, String currency, TransactionStatus status, String payeeId) {
+    public Withdrawal(LocalDateTime timestamp, String walletId, long amount, String currency, TransactionStatus status, String payeeId) {
         super(timestamp, walletId, amount, currency, status);
         this.payeeId = payeeId;
     }
@@ -19,4 +21,8 @@ public class Withdrawal extends Transaction {
     public String getPayeeId() {
         return this.payeeId;
     }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
 }
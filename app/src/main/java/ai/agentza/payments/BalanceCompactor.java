@@ -0,0 +1,52 @@
+package ai.agentza.payments;
+
+import ai.agentza.model.BalanceCheckpoint;
+import ai.agentza.model.BalanceCheckpointRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// In JOURNAL mode, periodically advances the BalanceCheckpoint of every wallet that received transactions since its last
+// checkpoint, so that reading a balance only has to sum a short journal tail.
+//
+// Compaction runs exclusively on the TransferWriter thread: no journal row can be in flight while it runs, so every row up
+// to the last journal sequence it sees is committed and can be folded into the checkpoints.
+@Component
+public class BalanceCompactor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BalanceCompactor.class);
+
+    private final BalanceCheckpointRepository balanceCheckpointRepository;
+    private final TransferWriter transferWriter;
+    private final BalanceMode balanceMode;
+
+    public BalanceCompactor(BalanceCheckpointRepository balanceCheckpointRepository, TransferWriter transferWriter, WalletBalances walletBalances) {
+        this.balanceCheckpointRepository = balanceCheckpointRepository;
+        this.transferWriter = transferWriter;
+        this.balanceMode = walletBalances.getBalanceMode();
+    }
+
+    @Scheduled(fixedDelayString = "${agentza.payments.journal.compaction-interval:60s}")
+    public void scheduledCompaction() {
+        if (balanceMode == BalanceMode.JOURNAL) {
+            transferWriter.runExclusive(this::compact).join();
+        }
+    }
+
+    void compact() {
+        long journalSequence = balanceCheckpointRepository.findLastJournalSequence();
+        List<BalanceCheckpointRepository.Advance> advances = balanceCheckpointRepository.findAdvancesUpTo(journalSequence);
+        if (advances.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        balanceCheckpointRepository.saveAll(advances.stream()
+                .map(advance -> new BalanceCheckpoint(advance.walletId(), advance.balance(), journalSequence, now))
+                .toList());
+        LOG.debug("Advanced the balance checkpoints of {} wallets to journal sequence {}", advances.size(), journalSequence);
+    }
+}
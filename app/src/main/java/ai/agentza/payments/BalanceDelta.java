@@ -0,0 +1,4 @@
+package ai.agentza.payments;
+
+// A change to one stripe of the balance of a wallet. Stripe 0 is the balance of the Wallet row itself.
+public record BalanceDelta(String walletId, int stripe, long delta) {}
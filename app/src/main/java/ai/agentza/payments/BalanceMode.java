@@ -0,0 +1,11 @@
+package ai.agentza.payments;
+
+// How wallet balances are stored, set with agentza.payments.balance-mode. It must not be changed for an existing
+// database, because the meaning of the balance column of the Wallet rows is different in each mode.
+public enum BalanceMode {
+    // Every transfer updates the balance of the Wallet rows it touches.
+    IN_PLACE,
+    // Transfers only append to the transaction journal. The balance of the Wallet rows is the opening balance, and the
+    // current balance is derived from the latest BalanceCheckpoint of the wallet plus the journal after it.
+    JOURNAL
+}
@@ -0,0 +1,297 @@
+package ai.agentza.payments;
+
+import ai.agentza.model.Wallet;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Moves money between wallets without locking. Wallets are sharded by id across a fixed set of single-writer lanes: the
+// debit is applied on the lane that owns the source wallet, and the resulting Transfer is handed to the TransferWriter to
+// be persisted asynchronously. The credit is only applied on the lane that owns the target wallet once the transfer is
+// durable, so that the target can never spend money that a failed write takes back.
+//
+// Striped wallets have each of their stripes sharded independently, so that credits to a hot wallet are spread over
+// several lanes. A credit goes to a random stripe, and a debit takes what it needs from the stripes one after the other,
+// starting at a random one, and fails only if all of them together don't hold enough.
+//
+// The in-memory balances are authoritative once a wallet has been loaded into its lane, so a wallet must only be moved
+// by one engine at a time (i.e. a single agentza-server instance). Every delta of a transfer is in flight on its stripe
+// from when it is recorded until the transfer is persisted and the delta applied, or the transfer failed and the delta
+// reverted. Stripes without deltas in flight are dropped from their lane every agentza.payments.balances.idle-interval
+// once they are idle.
+@Component
+public class PaymentEngine {
+
+    private final PaymentLane[] lanes;
+    private final TransferWriter transferWriter;
+
+    public PaymentEngine(
+            WalletBalances walletBalances,
+            TransferWriter transferWriter,
+            @Value("${agentza.payments.lanes:0}") int laneCount
+    ) {
+        this.transferWriter = transferWriter;
+        this.lanes = new PaymentLane[laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors()];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new PaymentLane(i, walletBalances::stripeBalance);
+        }
+    }
+
+    /**
+     * Transfers {@code amount}, in minor units, from {@code source} to {@code target}. The returned future completes once
+     * both sides of the transfer are durable, or exceptionally if the source wallet does not have enough funds or the
+     * transfer could not be persisted.
+     */
+    public CompletableFuture<Transfer> transfer(Wallet source, Wallet target, long amount, String payerDescription, String payeeId) {
+        return transfer(source, target, amount, payerDescription, payeeId, null);
+    }
+
+    /**
+     * Like {@link #transfer(Wallet, Wallet, long, String, String)}, recording the idempotency key of the request on the
+     * withdrawal. The transfer fails if the source wallet already has a withdrawal with the same key.
+     */
+    public CompletableFuture<Transfer> transfer(Wallet source, Wallet target, long amount, String payerDescription, String payeeId, String idempotencyKey) {
+        return transfer(source, new Payout(target.getWalletId(), target.getStripes(), amount, payeeId, idempotencyKey), payerDescription);
+    }
+
+    public CompletableFuture<Transfer> transfer(Wallet source, Payout payout, String payerDescription) {
+        return transferAll(source, List.of(payout), payerDescription, true).getFirst();
+    }
+
+    /**
+     * Transfers each of the {@code payouts} from {@code source}. All the debits are applied before any credit, and the
+     * transfers that went through are persisted together, as one unit of the TransferWriter. The returned futures are in
+     * the order of the payouts.
+     * <p>
+     * If {@code atomic} is set, either all the payouts go through or none of them does, and all the futures fail with
+     * the same cause. Otherwise each future succeeds or fails on its own.
+     */
+    public List<CompletableFuture<Transfer>> transferAll(Wallet source, List<Payout> payouts, String payerDescription, boolean atomic) {
+        int sourceStripes = Math.max(1, source.getStripes());
+        List<CompletableFuture<List<BalanceDelta>>> debits = new ArrayList<>(payouts.size());
+        List<CompletableFuture<Transfer>> results = new ArrayList<>(payouts.size());
+        for (Payout payout : payouts) {
+            CompletableFuture<List<BalanceDelta>> debited = new CompletableFuture<>();
+            int firstStripe = sourceStripes == 1 ? 0 : ThreadLocalRandom.current().nextInt(sourceStripes);
+            debit(source.getWalletId(), sourceStripes, firstStripe, 0, payout.amount(), new ArrayList<>(1), debited, debited::complete);
+            debits.add(debited);
+            results.add(new CompletableFuture<>());
+        }
+
+        CompletableFuture.allOf(debits.toArray(CompletableFuture[]::new)).whenComplete((ignored, debitFailure) -> {
+            if (atomic && debitFailure != null) {
+                fail(debits, results, firstFailure(debits));
+                return;
+            }
+            List<CompletableFuture<Transfer>> credits = new ArrayList<>(payouts.size());
+            for (int i = 0; i < payouts.size(); i++) {
+                CompletableFuture<List<BalanceDelta>> debited = debits.get(i);
+                if (debited.isCompletedExceptionally()) {
+                    results.get(i).completeExceptionally(debited.exceptionNow());
+                    credits.add(CompletableFuture.failedFuture(debited.exceptionNow()));
+                } else {
+                    credits.add(credit(source, payouts.get(i), payerDescription, debited.join()));
+                }
+            }
+            CompletableFuture.allOf(credits.toArray(CompletableFuture[]::new)).whenComplete((alsoIgnored, creditFailure) -> {
+                if (atomic && creditFailure != null) {
+                    Throwable cause = firstFailure(credits);
+                    for (int i = 0; i < payouts.size(); i++) {
+                        // Failed credits have already reverted their debits
+                        if (!credits.get(i).isCompletedExceptionally()) {
+                            unwind(credits.get(i).join());
+                        }
+                        results.get(i).completeExceptionally(cause);
+                    }
+                    return;
+                }
+                List<Transfer> transfers = new ArrayList<>(payouts.size());
+                for (int i = 0; i < payouts.size(); i++) {
+                    CompletableFuture<Transfer> credited = credits.get(i);
+                    if (credited.isCompletedExceptionally()) {
+                        results.get(i).completeExceptionally(credited.exceptionNow());
+                    } else {
+                        transfers.add(credited.join());
+                    }
+                }
+                if (transfers.isEmpty()) {
+                    return;
+                }
+                transferWriter.write(transfers).whenComplete((persisted, failure) -> {
+                    for (int i = 0; i < payouts.size(); i++) {
+                        CompletableFuture<Transfer> credited = credits.get(i);
+                        if (credited.isCompletedExceptionally()) {
+                            continue;
+                        }
+                        if (failure == null) {
+                            // Queued on the target lane before the result completes, so anything the caller does next
+                            // with the target wallet sees the credit.
+                            applyCredit(credited.join());
+                            settle(debits(credited.join()));
+                            results.get(i).complete(credited.join());
+                        } else {
+                            // Nothing was persisted, so undo the debit. The credit was never applied.
+                            unwind(credited.join());
+                            results.get(i).completeExceptionally(failure);
+                        }
+                    }
+                });
+            });
+        });
+        return results;
+    }
+
+    // Loads the balance of the target stripe, so that it is read from before the transfer is persisted, and records the
+    // credit as the last of the deltas of the transfer. The credit itself is applied by applyCredit, once it is durable.
+    private CompletableFuture<Transfer> credit(Wallet source, Payout payout, String payerDescription, List<BalanceDelta> deltas) {
+        CompletableFuture<Transfer> result = new CompletableFuture<>();
+        int targetStripes = Math.max(1, payout.targetStripes());
+        int stripe = targetStripes == 1 ? 0 : ThreadLocalRandom.current().nextInt(targetStripes);
+        PaymentLane targetLane = laneFor(payout.targetWalletId(), stripe);
+        targetLane.submit(() -> {
+            try {
+                targetLane.balance(payout.targetWalletId(), stripe).inFlight++;
+            } catch (RuntimeException e) {
+                revert(deltas);
+                result.completeExceptionally(e);
+                return;
+            }
+            deltas.add(new BalanceDelta(payout.targetWalletId(), stripe, payout.amount()));
+
+            result.complete(new Transfer(
+                    UUID.randomUUID().toString(),
+                    UUID.randomUUID().toString(),
+                    LocalDateTime.now().truncatedTo(ChronoUnit.MICROS), // the precision of the timestamp column
+                    source.getWalletId(),
+                    payout.targetWalletId(),
+                    payout.amount(),
+                    source.getCurrency(),
+                    payerDescription,
+                    payout.payeeId(),
+                    payout.idempotencyKey(),
+                    deltas
+            ));
+        });
+        return result;
+    }
+
+    private void applyCredit(Transfer transfer) {
+        BalanceDelta credit = transfer.balanceDeltas().getLast();
+        PaymentLane lane = laneFor(credit.walletId(), credit.stripe());
+        lane.submit(() -> {
+            PaymentLane.Balance balance = lane.balance(credit.walletId(), credit.stripe());
+            balance.value += credit.delta();
+            balance.inFlight--;
+        });
+    }
+
+    // Reverts the debits of a transfer that won't be persisted, and releases its credit, which was never applied
+    private void unwind(Transfer transfer) {
+        revert(debits(transfer));
+        settle(List.of(transfer.balanceDeltas().getLast()));
+    }
+
+    private static List<BalanceDelta> debits(Transfer transfer) {
+        return transfer.balanceDeltas().subList(0, transfer.balanceDeltas().size() - 1);
+    }
+
+    private static Throwable firstFailure(List<? extends CompletableFuture<?>> steps) {
+        return steps.stream().filter(CompletableFuture::isCompletedExceptionally).findFirst().orElseThrow().exceptionNow();
+    }
+
+    // Reverts the steps that succeeded and fails every result with the same cause. Failed steps have already reverted
+    // their own deltas.
+    private void fail(List<CompletableFuture<List<BalanceDelta>>> steps, List<CompletableFuture<Transfer>> results, Throwable cause) {
+        for (int i = 0; i < steps.size(); i++) {
+            if (!steps.get(i).isCompletedExceptionally()) {
+                revert(steps.get(i).join());
+            }
+            results.get(i).completeExceptionally(cause);
+        }
+    }
+
+    // Takes the remaining amount from the stripe at (first + visited) % stripes, and moves on to the next stripe until the
+    // whole amount is taken. Debits of wallets that are not striped are all or nothing on their single lane.
+    private void debit(String walletId, int stripes, int first, int visited, long remaining, List<BalanceDelta> deltas, CompletableFuture<?> result, DebitCallback onDebited) {
+        int stripe = (first + visited) % stripes;
+        PaymentLane lane = laneFor(walletId, stripe);
+        lane.submit(() -> {
+            PaymentLane.Balance balance;
+            try {
+                balance = lane.balance(walletId, stripe);
+            } catch (RuntimeException e) {
+                revert(deltas);
+                result.completeExceptionally(e);
+                return;
+            }
+            long taken = stripes == 1
+                    ? (balance.value >= remaining ? remaining : 0)
+                    : Math.max(0, Math.min(balance.value, remaining));
+            if (taken > 0) {
+                balance.value -= taken;
+                balance.inFlight++;
+                deltas.add(new BalanceDelta(walletId, stripe, -taken));
+            }
+            if (taken == remaining) {
+                onDebited.debited(deltas);
+            } else if (visited + 1 == stripes) {
+                revert(deltas);
+                result.completeExceptionally(new TransferFailedException(TransferFailedException.Reason.INSUFFICIENT_FUNDS));
+            } else {
+                debit(walletId, stripes, first, visited + 1, remaining - taken, deltas, result, onDebited);
+            }
+        });
+    }
+
+    private void revert(List<BalanceDelta> deltas) {
+        for (BalanceDelta delta : deltas) {
+            PaymentLane lane = laneFor(delta.walletId(), delta.stripe());
+            lane.submit(() -> {
+                PaymentLane.Balance balance = lane.balance(delta.walletId(), delta.stripe());
+                balance.value -= delta.delta();
+                balance.inFlight--;
+            });
+        }
+    }
+
+    // Marks deltas that are persisted and applied, or were never applied, as no longer in flight
+    private void settle(List<BalanceDelta> deltas) {
+        for (BalanceDelta delta : deltas) {
+            PaymentLane lane = laneFor(delta.walletId(), delta.stripe());
+            lane.submit(() -> lane.balance(delta.walletId(), delta.stripe()).inFlight--);
+        }
+    }
+
+    private PaymentLane laneFor(String walletId, int stripe) {
+        return lanes[Math.floorMod(PaymentLane.key(walletId, stripe).hashCode(), lanes.length)];
+    }
+
+    @Scheduled(fixedDelayString = "${agentza.payments.balances.idle-interval:5m}")
+    public void evictIdleBalances() {
+        for (PaymentLane lane : lanes) {
+            lane.submit(lane::evictIdle);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (PaymentLane lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    public record Payout(String targetWalletId, int targetStripes, long amount, String payeeId, String idempotencyKey) {}
+
+    private interface DebitCallback {
+        void debited(List<BalanceDelta> deltas);
+    }
+}
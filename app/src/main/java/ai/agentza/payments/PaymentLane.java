@@ -0,0 +1,76 @@
+package ai.agentza.payments;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// A single-writer lane. Every stripe of every wallet is owned by exactly one lane, and all reads and writes of its
+// in-memory balance happen on the lane's thread, so no locking is needed around the balance itself.
+//
+// Balances are loaded on first use, and dropped by evictIdle once they were not used since the sweep before and have no
+// delta in flight. The persisted balance of those is the same as the in-memory one, so they are loaded again as they
+// were. A lane holds the balances used within the last two sweeps, plus the ones with deltas in flight.
+class PaymentLane {
+
+    private final ExecutorService executor;
+    private final Map<String, Balance> balances = new HashMap<>();
+    private final Loader loader;
+
+    PaymentLane(int index, Loader loader) {
+        this.loader = loader;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "payment-lane-" + index);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static String key(String walletId, int stripe) {
+        return stripe == 0 ? walletId : walletId + '#' + stripe;
+    }
+
+    void submit(Runnable task) {
+        executor.execute(task);
+    }
+
+    // Must only be called from the lane's own thread.
+    Balance balance(String walletId, int stripe) {
+        String key = key(walletId, stripe);
+        Balance balance = balances.get(key);
+        if (balance == null) {
+            balance = new Balance(loader.load(walletId, stripe));
+            balances.put(key, balance);
+        }
+        balance.used = true;
+        return balance;
+    }
+
+    // Must only be called from the lane's own thread.
+    void evictIdle() {
+        balances.values().removeIf(balance -> {
+            boolean idle = !balance.used && balance.inFlight == 0;
+            balance.used = false;
+            return idle;
+        });
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    interface Loader {
+        long load(String walletId, int stripe);
+    }
+
+    static final class Balance {
+        long value; // in minor units, updated in place so that moving money doesn't allocate
+        // Deltas of transfers that are applied in memory but not persisted yet, or persisted but not applied yet
+        int inFlight;
+        boolean used;
+
+        Balance(long value) {
+            this.value = value;
+        }
+    }
+}
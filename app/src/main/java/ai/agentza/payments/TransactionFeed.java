@@ -0,0 +1,222 @@
+package ai.agentza.payments;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// The transactions committed by the TransferWriter, for clients to follow instead of polling the transactions of their
+// wallets. The latest ring-size transactions are kept in a ring buffer, in the order they were committed, so that a
+// subscriber that reconnects can resume after the last event it got.
+//
+// Each subscriber has a bounded buffer of events that were published but not consumed yet. A subscriber that lets its
+// buffer fill up is evicted rather than holding up the writer or growing without bounds, and can resume from the ring.
+//
+// Event ids only make sense to the instance that issued them: they are prefixed with the time the feed was created, and
+// a subscriber resuming with an id of another instance, or one that fell off the ring, has to catch up some other way.
+@Component
+public class TransactionFeed {
+
+    private final Entry[] ring;
+    private final int bufferSize;
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36);
+    private final Map<String, List<Subscription>> subscribers = new HashMap<>();
+    // Guards the ring and the subscribers, so that subscribing doesn't miss nor repeat what is being published
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Counter evictions;
+    private long nextSequence = 1;
+    private int subscriberCount;
+
+    public TransactionFeed(
+            @Value("${agentza.events.ring-size:65536}") int ringSize,
+            @Value("${agentza.events.subscriber-buffer:1024}") int bufferSize,
+            MeterRegistry meterRegistry
+    ) {
+        this.ring = new Entry[ringSize];
+        this.bufferSize = bufferSize;
+        Gauge.builder("agentza.events.subscribers", () -> subscriberCount).register(meterRegistry);
+        this.evictions = Counter.builder("agentza.events.evictions").register(meterRegistry);
+    }
+
+    /**
+     * Publishes both sides of the given transfers, which must already be committed.
+     */
+    public void publish(List<Transfer> transfers) {
+        lock.lock();
+        try {
+            for (Transfer transfer : transfers) {
+                append(transfer.sourceWalletId(), false, transfer);
+                append(transfer.targetWalletId(), true, transfer);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void append(String walletId, boolean deposit, Transfer transfer) {
+        Event event = new Event(epoch + "-" + nextSequence, deposit, transfer);
+        ring[(int) (nextSequence % ring.length)] = new Entry(walletId, event);
+        nextSequence++;
+        List<Subscription> walletSubscribers = subscribers.get(walletId);
+        if (walletSubscribers == null) {
+            return;
+        }
+        for (int i = walletSubscribers.size() - 1; i >= 0; i--) {
+            Subscription subscription = walletSubscribers.get(i);
+            if (!subscription.buffer.offer(event)) {
+                subscription.evict();
+                walletSubscribers.remove(i);
+                subscriberCount--;
+                evictions.increment();
+            }
+        }
+        if (walletSubscribers.isEmpty()) {
+            subscribers.remove(walletId);
+        }
+    }
+
+    /**
+     * Subscribes to the transactions of a wallet from now on, or from right after {@code lastEventId} if it is given and
+     * still in the ring.
+     */
+    public Subscription subscribe(String walletId, String lastEventId) {
+        lock.lock();
+        try {
+            Subscription subscription = new Subscription(walletId, bufferSize);
+            if (lastEventId != null) {
+                long resumeAfter = sequenceOf(lastEventId);
+                long oldest = Math.max(1, nextSequence - ring.length);
+                subscription.resumed = resumeAfter >= oldest - 1 && resumeAfter < nextSequence;
+                if (subscription.resumed) {
+                    for (long sequence = resumeAfter + 1; sequence < nextSequence; sequence++) {
+                        Entry entry = ring[(int) (sequence % ring.length)];
+                        if (entry.walletId().equals(walletId)) {
+                            subscription.replay.add(entry.event());
+                        }
+                    }
+                }
+            }
+            subscribers.computeIfAbsent(walletId, id -> new ArrayList<>()).add(subscription);
+            subscriberCount++;
+            return subscription;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // -1 if the id wasn't issued by this instance
+    private long sequenceOf(String eventId) {
+        int separator = eventId.indexOf('-');
+        if (separator < 0 || !eventId.substring(0, separator).equals(epoch)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(eventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void unsubscribe(Subscription subscription) {
+        lock.lock();
+        try {
+            List<Subscription> walletSubscribers = subscribers.get(subscription.walletId);
+            if (walletSubscribers != null && walletSubscribers.remove(subscription)) {
+                subscriberCount--;
+                if (walletSubscribers.isEmpty()) {
+                    subscribers.remove(subscription.walletId);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lock.lock();
+        try {
+            subscribers.values().forEach(walletSubscribers -> walletSubscribers.forEach(Subscription::evict));
+            subscribers.clear();
+            subscriberCount = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * One side of a committed transfer: the deposit into the target wallet, or the withdrawal from the source wallet.
+     */
+    public record Event(String id, boolean deposit, Transfer transfer) {}
+
+    private record Entry(String walletId, Event event) {}
+
+    public class Subscription implements AutoCloseable {
+
+        // Wakes up the consumer of an evicted subscription
+        private static final Event EVICTED = new Event(null, false, null);
+
+        private final String walletId;
+        private final Queue<Event> replay = new ArrayDeque<>();
+        private final BlockingQueue<Event> buffer;
+        private boolean resumed;
+        private volatile boolean evicted;
+
+        private Subscription(String walletId, int bufferSize) {
+            this.walletId = walletId;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        /**
+         * Whether the subscription resumed after the last event id it was given. If not, events may have been missed.
+         */
+        public boolean isResumed() {
+            return resumed;
+        }
+
+        /**
+         * Whether the subscriber fell too far behind, or the feed was shut down. No more events are delivered then.
+         */
+        public boolean isEvicted() {
+            return evicted;
+        }
+
+        /**
+         * The next event, or null if there was none within the timeout. Only to be called by one consumer.
+         */
+        public Event poll(Duration timeout) throws InterruptedException {
+            Event event = replay.poll();
+            if (event != null) {
+                return event;
+            }
+            event = buffer.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            return event == EVICTED ? null : event;
+        }
+
+        // The events still buffered are dropped, the subscriber can get them again by resuming from the ring
+        private void evict() {
+            evicted = true;
+            buffer.clear();
+            buffer.offer(EVICTED);
+        }
+
+        @Override
+        public void close() {
+            unsubscribe(this);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package ai.agentza.payments;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+// A transfer that was applied by the PaymentEngine. It is persisted as a Withdrawal on the source wallet and a Deposit on
+// the target wallet, both sharing the same timestamp. The balance deltas say which stripes of the two wallets were moved.
+public record Transfer(
+        String withdrawalId,
+        String depositId,
+        LocalDateTime timestamp,
+        String sourceWalletId,
+        String targetWalletId,
+        long amount,
+        String currency,
+        String payerDescription,
+        String payeeId,
+        String idempotencyKey,
+        List<BalanceDelta> balanceDeltas
+) {}
@@ -0,0 +1,36 @@
+package ai.agentza.payments;
+
+// A transfer that was refused, with the reason why.
+public class TransferFailedException extends RuntimeException {
+
+    public enum Reason {
+        INVALID_AMOUNT("Invalid amount"),
+        UNAUTHORIZED("Unauthorized"),
+        UNKNOWN_PAYEE("Unknown payee"),
+        UNKNOWN_PAYEE_WALLET("Unknown payee wallet"),
+        UNSUPPORTED_PAYEE_TYPE("Unsupported payee type"),
+        CURRENCY_MISMATCH("Currency mismatch"),
+        INSUFFICIENT_FUNDS("Insufficient funds");
+
+        private final String message;
+
+        Reason(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private final Reason reason;
+
+    public TransferFailedException(Reason reason) {
+        super(reason.getMessage());
+        this.reason = reason;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,248 @@
+package ai.agentza.payments;
+
+import ai.agentza.model.transactions.Transaction;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+// Persists the outcome of transfers that were already applied in memory by the PaymentEngine. Pending writes from many
+// concurrent requests are group-committed: a single writer thread collects them into batches of up to batch-size
+// transfers (waiting at most max-delay-ms for a batch to fill up) and flushes each batch as JDBC batch statements in one
+// database transaction. Callers are only completed once the batch they are part of has been committed.
+//
+// In IN_PLACE mode balances are written as deltas, coalesced per wallet within a batch, so the order in which transfers
+// touching the same wallet are persisted does not matter. In JOURNAL mode only the transactions are written. In both modes
+// the WalletRollups of the wallets are updated in the same database transaction.
+//
+// The writer thread is the only writer of the transaction journal, so tasks that need a consistent view of the journal
+// can be run on it, between two batches, with runExclusive. It is also what publishes committed transfers to the
+// TransactionFeed, in the order they were committed.
+@Component
+public class TransferWriter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TransferWriter.class);
+
+    private static final String INSERT_TRANSACTION =
+            "insert into transaction (transaction_id, type, timestamp, wallet_id, amount, currency, status, payer_description, payee_id, idempotency_key) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Kept apart from the withdrawals, which are eventually archived
+    private static final String INSERT_IDEMPOTENCY_KEY =
+            "insert into idempotency_key (wallet_id, idempotency_key, transaction_id, timestamp) values (?, ?, ?, ?)";
+    private static final String ADJUST_BALANCE =
+            "update wallet set balance = balance + ? where wallet_id = ?";
+    private static final String ADJUST_STRIPE_BALANCE =
+            "update wallet_stripe set balance = balance + ? where wallet_id = ? and stripe = ?";
+    // Orders the deltas of wallet stripes by stripe only, ignoring the amount
+    private static final Comparator<BalanceDelta> STRIPE_ORDER = Comparator.comparing(BalanceDelta::walletId).thenComparingInt(BalanceDelta::stripe);
+
+    private final TransactionTemplate transactionTemplate;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionFeed transactionFeed;
+    private final WalletRollups walletRollups;
+    private final BalanceMode balanceMode;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final BlockingDeque<PendingWrite> queue = new LinkedBlockingDeque<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    public TransferWriter(
+            TransactionTemplate transactionTemplate,
+            JdbcTemplate jdbcTemplate,
+            TransactionFeed transactionFeed,
+            WalletRollups walletRollups,
+            WalletBalances walletBalances,
+            @Value("${agentza.payments.writer.batch-size:256}") int batchSize,
+            @Value("${agentza.payments.writer.max-delay-ms:1}") long maxDelayMs
+    ) {
+        this.transactionTemplate = transactionTemplate;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionFeed = transactionFeed;
+        this.walletRollups = walletRollups;
+        this.balanceMode = walletBalances.getBalanceMode();
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.thread = new Thread(this::run, "transfer-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues the given transfers to be persisted in the same database transaction. The returned future completes once
+     * they are durable.
+     */
+    public CompletableFuture<Void> write(List<Transfer> transfers) {
+        return enqueue(new PendingWrite(transfers, null, new CompletableFuture<>()));
+    }
+
+    /**
+     * Runs the given task on the writer thread, in its own database transaction, once all the transfers queued before it
+     * have been persisted and before any transfer queued after it is.
+     */
+    public CompletableFuture<Void> runExclusive(Runnable task) {
+        return enqueue(new PendingWrite(List.of(), task, new CompletableFuture<>()));
+    }
+
+    private CompletableFuture<Void> enqueue(PendingWrite pending) {
+        queue.add(pending);
+        // The writer may have stopped between the add and here. If it did, and hasn't drained the queue since, the write is
+        // still there to take back; otherwise whoever took it completes it.
+        if (!running && queue.remove(pending)) {
+            pending.result().completeExceptionally(shutDown());
+        }
+        return pending.result();
+    }
+
+    private void run() {
+        try {
+            writeBatches();
+        } finally {
+            // Nothing that is still queued will ever be written
+            running = false;
+            for (PendingWrite pending = queue.poll(); pending != null; pending = queue.poll()) {
+                pending.result().completeExceptionally(shutDown());
+            }
+        }
+    }
+
+    private void writeBatches() {
+        List<PendingWrite> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingWrite first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                if (first.task() != null) {
+                    runTask(first);
+                    continue;
+                }
+                batch.add(first);
+                int size = first.transfers().size();
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (size < batchSize) {
+                    PendingWrite next = queue.poll();
+                    if (next == null) {
+                        long remaining = deadline - System.nanoTime();
+                        next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                    }
+                    if (next.task() != null) {
+                        queue.putFirst(next);
+                        break;
+                    }
+                    batch.add(next);
+                    size += next.transfers().size();
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                batch.forEach(pending -> pending.result().completeExceptionally(shutDown()));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void runTask(PendingWrite pending) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> pending.task().run());
+            pending.result().complete(null);
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to run exclusive task", e);
+            pending.result().completeExceptionally(e);
+        }
+    }
+
+    private void flush(List<PendingWrite> batch) {
+        try {
+            persist(batch);
+            batch.forEach(pending -> transactionFeed.publish(pending.transfers()));
+            batch.forEach(pending -> pending.result().complete(null));
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                LOG.warn("Failed to persist transfers", e);
+                batch.getFirst().result().completeExceptionally(e);
+                return;
+            }
+            // Don't let a single bad write fail everybody else in the batch.
+            for (PendingWrite pending : batch) {
+                flush(List.of(pending));
+            }
+        }
+    }
+
+    private void persist(List<PendingWrite> batch) {
+        List<Transfer> transfers = new ArrayList<>();
+        List<Object[]> rows = new ArrayList<>();
+        List<Object[]> idempotencyKeys = new ArrayList<>();
+        // Sorted, so that concurrent writers lock wallets in the same order
+        Map<String, Long> walletDeltas = new TreeMap<>();
+        Map<BalanceDelta, Long> stripeDeltas = new TreeMap<>(STRIPE_ORDER);
+        for (PendingWrite pending : batch) {
+            transfers.addAll(pending.transfers());
+            for (Transfer transfer : pending.transfers()) {
+                Timestamp timestamp = Timestamp.valueOf(transfer.timestamp());
+                int status = Transaction.TransactionStatus.COMPLETED.ordinal();
+                rows.add(new Object[]{transfer.withdrawalId(), "WITHDRAWAL", timestamp, transfer.sourceWalletId(), -transfer.amount(), transfer.currency(), status, null, transfer.payeeId(), transfer.idempotencyKey()});
+                rows.add(new Object[]{transfer.depositId(), "DEPOSIT", timestamp, transfer.targetWalletId(), transfer.amount(), transfer.currency(), status, transfer.payerDescription(), null, null});
+                if (transfer.idempotencyKey() != null) {
+                    idempotencyKeys.add(new Object[]{transfer.sourceWalletId(), transfer.idempotencyKey(), transfer.withdrawalId(), timestamp});
+                }
+                for (BalanceDelta delta : transfer.balanceDeltas()) {
+                    if (delta.stripe() == 0) {
+                        walletDeltas.merge(delta.walletId(), delta.delta(), Long::sum);
+                    } else {
+                        stripeDeltas.merge(delta, delta.delta(), Long::sum);
+                    }
+                }
+            }
+        }
+        List<Object[]> walletUpdates = new ArrayList<>(walletDeltas.size());
+        walletDeltas.forEach((walletId, delta) -> walletUpdates.add(new Object[]{delta, walletId}));
+        List<Object[]> stripeUpdates = new ArrayList<>(stripeDeltas.size());
+        stripeDeltas.forEach((stripe, delta) -> stripeUpdates.add(new Object[]{delta, stripe.walletId(), stripe.stripe()}));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            // Reads the balances from before the batch, so goes first
+            walletRollups.add(transfers);
+            jdbcTemplate.batchUpdate(INSERT_TRANSACTION, rows);
+            if (!idempotencyKeys.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_IDEMPOTENCY_KEY, idempotencyKeys);
+            }
+            if (balanceMode == BalanceMode.IN_PLACE) {
+                jdbcTemplate.batchUpdate(ADJUST_BALANCE, walletUpdates);
+                jdbcTemplate.batchUpdate(ADJUST_STRIPE_BALANCE, stripeUpdates);
+            }
+        });
+    }
+
+    private static IllegalStateException shutDown() {
+        return new IllegalStateException("Transfer writer is shut down");
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private record PendingWrite(List<Transfer> transfers, Runnable task, CompletableFuture<Void> result) {}
+}
@@ -0,0 +1,55 @@
+package ai.agentza.payments;
+
+import ai.agentza.model.Wallet;
+import ai.agentza.model.WalletRepository;
+import ai.agentza.model.WalletStripe;
+import ai.agentza.model.WalletStripeRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+// Reads the current, persisted balance of wallets, whichever BalanceMode they are kept in.
+@Component
+public class WalletBalances {
+
+    private final WalletRepository walletRepository;
+    private final WalletStripeRepository walletStripeRepository;
+    private final BalanceMode balanceMode;
+
+    public WalletBalances(WalletRepository walletRepository, WalletStripeRepository walletStripeRepository, @Value("${agentza.payments.balance-mode:IN_PLACE}") BalanceMode balanceMode) {
+        this.walletRepository = walletRepository;
+        this.walletStripeRepository = walletStripeRepository;
+        this.balanceMode = balanceMode;
+    }
+
+    public BalanceMode getBalanceMode() {
+        return balanceMode;
+    }
+
+    // The total balance of the wallet, across all of its stripes.
+    public long balanceOf(Wallet wallet) {
+        return switch (balanceMode) {
+            case IN_PLACE -> wallet.getStripes() > 1 ? wallet.getBalance() + walletStripeRepository.sumBalances(wallet.getWalletId()) : wallet.getBalance();
+            case JOURNAL -> walletRepository.findJournalBalance(wallet.getWalletId()).orElseThrow();
+        };
+    }
+
+    public long balanceOf(String walletId) {
+        return balanceOf(walletRepository.findById(walletId).orElseThrow());
+    }
+
+    // The balance of a single stripe of the wallet. Wallets are not striped in JOURNAL mode (see WalletStriping), so their
+    // whole balance is on stripe 0.
+    public long stripeBalance(String walletId, int stripe) {
+        return switch (balanceMode) {
+            case IN_PLACE -> stripe == 0
+                    ? walletRepository.findById(walletId).orElseThrow().getBalance()
+                    : walletStripeRepository.findById(new WalletStripe.Key(walletId, stripe)).orElseThrow().getBalance();
+            case JOURNAL -> {
+                if (stripe != 0) {
+                    throw new IllegalStateException("Wallet " + walletId + " is striped, which JOURNAL mode doesn't support");
+                }
+                yield walletRepository.findJournalBalance(walletId).orElseThrow();
+            }
+        };
+    }
+}
@@ -0,0 +1,169 @@
+package ai.agentza.payments;
+
+import ai.agentza.archive.TransactionArchive;
+import ai.agentza.model.WalletRollup.Period;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+// Maintains the WalletRollup rows: the daily and monthly totals of each wallet, and its balance at the end of each of
+// them. The TransferWriter updates them along with the transactions it persists, in the same database transaction, so a
+// statement never disagrees with the journal.
+//
+// Each batch of transfers is added in three batch statements: the rollups the batch touches are first created if needed,
+// with the balance of the wallet at the start of their period as closing balance, then the totals of the batch are added
+// to them, and finally to the closing balance of every later rollup of the same wallet. Creating a rollup reads the
+// closing balance of the rollup before it, or the opening balance of the one after it, and only reads the balance of the
+// wallet when it has no rollups at all.
+@Component
+public class WalletRollups {
+
+    private static final String ENSURE_ROLLUP = """
+            insert into wallet_rollup (wallet_id, period, period_start, transactions, total_in, total_out, closing_balance)
+            select ?, ?, ?, 0, 0, 0, coalesce(
+                (select closing_balance from wallet_rollup where wallet_id = ? and period = ? and period_start < ? order by period_start desc limit 1),
+                (select closing_balance - total_in + total_out from wallet_rollup where wallet_id = ? and period = ? and period_start > ? order by period_start limit 1),
+                (%s)
+            )
+            where not exists (select 1 from wallet_rollup where wallet_id = ? and period = ? and period_start = ?)
+            """;
+    private static final String IN_PLACE_BALANCE =
+            "select w.balance + coalesce((select sum(s.balance) from wallet_stripe s where s.wallet_id = w.wallet_id and w.stripes > 1), 0) from wallet w where w.wallet_id = ?";
+    private static final String JOURNAL_BALANCE = """
+            select coalesce(c.balance, w.balance) + coalesce((
+                select sum(t.amount) from transaction t where t.wallet_id = w.wallet_id and t.journal_sequence > coalesce(c.journal_sequence, 0)
+            ), 0)
+            from wallet w left join balance_checkpoint c on c.wallet_id = w.wallet_id where w.wallet_id = ?""";
+    private static final String ADD_TOTALS =
+            "update wallet_rollup set transactions = transactions + ?, total_in = total_in + ?, total_out = total_out + ?, closing_balance = closing_balance + ? where wallet_id = ? and period = ? and period_start = ?";
+    private static final String SHIFT_LATER =
+            "update wallet_rollup set closing_balance = closing_balance + ? where wallet_id = ? and period = ? and period_start > ?";
+    private static final String INSERT_ROLLUP =
+            "insert into wallet_rollup (wallet_id, period, period_start, transactions, total_in, total_out, closing_balance) values (?, ?, ?, ?, ?, ?, ?)";
+    private static final String DELETE_ROLLUPS = "delete from wallet_rollup";
+    private static final String SELECT_DAILY_TOTALS = """
+            select wallet_id, cast(timestamp as date), count(*), sum(case when amount > 0 then amount else 0 end), sum(case when amount < 0 then -amount else 0 end)
+            from transaction group by wallet_id, cast(timestamp as date)
+            """;
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+    // Creating the rollups of a wallet in chronological order lets each one find the closing balance of the previous one
+    private static final Comparator<Key> KEY_ORDER =
+            Comparator.comparing(Key::walletId).thenComparing(Key::period).thenComparing(Key::start);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final WalletBalances walletBalances;
+    private final TransactionArchive transactionArchive;
+    private final String ensureRollup;
+
+    public WalletRollups(JdbcTemplate jdbcTemplate, WalletBalances walletBalances, TransactionArchive transactionArchive) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.walletBalances = walletBalances;
+        this.transactionArchive = transactionArchive;
+        this.ensureRollup = ENSURE_ROLLUP.formatted(walletBalances.getBalanceMode() == BalanceMode.JOURNAL ? JOURNAL_BALANCE : IN_PLACE_BALANCE);
+    }
+
+    /**
+     * Adds the transfers to the rollups of their wallets. Must be called in the transaction that persists them, before
+     * their transactions and balance changes are written.
+     */
+    void add(List<Transfer> transfers) {
+        Map<Key, Totals> totals = new TreeMap<>(KEY_ORDER);
+        for (Transfer transfer : transfers) {
+            LocalDate date = transfer.timestamp().toLocalDate();
+            for (Period period : Period.values()) {
+                totals.computeIfAbsent(new Key(transfer.sourceWalletId(), period, period.startOf(date)), key -> new Totals()).add(-transfer.amount());
+                totals.computeIfAbsent(new Key(transfer.targetWalletId(), period, period.startOf(date)), key -> new Totals()).add(transfer.amount());
+            }
+        }
+
+        List<Object[]> ensures = new ArrayList<>(totals.size());
+        List<Object[]> additions = new ArrayList<>(totals.size());
+        List<Object[]> shifts = new ArrayList<>(totals.size());
+        totals.forEach((key, total) -> {
+            String walletId = key.walletId();
+            int period = key.period().ordinal();
+            Date start = Date.valueOf(key.start());
+            ensures.add(new Object[]{walletId, period, start, walletId, period, start, walletId, period, start, walletId, walletId, period, start});
+            additions.add(new Object[]{total.transactions, total.in, total.out, total.in - total.out, walletId, period, start});
+            shifts.add(new Object[]{total.in - total.out, walletId, period, start});
+        });
+        jdbcTemplate.batchUpdate(ensureRollup, ensures);
+        jdbcTemplate.batchUpdate(ADD_TOTALS, additions);
+        jdbcTemplate.batchUpdate(SHIFT_LATER, shifts);
+    }
+
+    /**
+     * Recomputes all the rollups from the transactions, archived ones included. Must be run exclusively on the
+     * TransferWriter, so that no transfer is persisted meanwhile. Returns the number of rollups written.
+     */
+    public int rebuild() {
+        Map<String, NavigableMap<LocalDate, Totals>> days = new HashMap<>();
+        jdbcTemplate.query(SELECT_DAILY_TOTALS, rs -> {
+            Totals total = days.computeIfAbsent(rs.getString(1), id -> new TreeMap<>()).computeIfAbsent(rs.getDate(2).toLocalDate(), day -> new Totals());
+            total.transactions += rs.getLong(3);
+            total.in += rs.getLong(4);
+            total.out += rs.getLong(5);
+        });
+        for (String walletId : transactionArchive.walletIds()) {
+            NavigableMap<LocalDate, Totals> walletDays = days.computeIfAbsent(walletId, id -> new TreeMap<>());
+            transactionArchive.forEach(walletId, EARLIEST, LATEST, transaction ->
+                    walletDays.computeIfAbsent(transaction.timestamp().toLocalDate(), day -> new Totals()).add(transaction.amount()));
+        }
+
+        List<Object[]> rows = new ArrayList<>();
+        days.forEach((walletId, walletDays) -> {
+            // The transactions account for every change to the balance since the wallet was created
+            long balance = walletBalances.balanceOf(walletId) - walletDays.values().stream().mapToLong(total -> total.in - total.out).sum();
+            NavigableMap<LocalDate, Totals> months = new TreeMap<>();
+            NavigableMap<LocalDate, Long> monthClosings = new TreeMap<>();
+            for (var day : walletDays.entrySet()) {
+                Totals total = day.getValue();
+                balance += total.in - total.out;
+                rows.add(new Object[]{walletId, Period.DAY.ordinal(), Date.valueOf(day.getKey()), total.transactions, total.in, total.out, balance});
+                LocalDate month = Period.MONTH.startOf(day.getKey());
+                months.computeIfAbsent(month, start -> new Totals()).add(total);
+                monthClosings.put(month, balance);
+            }
+            months.forEach((month, total) ->
+                    rows.add(new Object[]{walletId, Period.MONTH.ordinal(), Date.valueOf(month), total.transactions, total.in, total.out, monthClosings.get(month)}));
+        });
+
+        jdbcTemplate.update(DELETE_ROLLUPS);
+        jdbcTemplate.batchUpdate(INSERT_ROLLUP, rows);
+        return rows.size();
+    }
+
+    private record Key(String walletId, Period period, LocalDate start) {}
+
+    private static class Totals {
+        long transactions;
+        long in;
+        long out;
+
+        void add(long amount) {
+            transactions++;
+            if (amount > 0) {
+                in += amount;
+            } else {
+                out -= amount;
+            }
+        }
+
+        void add(Totals other) {
+            transactions += other.transactions;
+            in += other.in;
+            out += other.out;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package ai.agentza.payments;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Rebuilds the WalletRollups from the transactions, e.g. after upgrading a database that has transactions from before
+// rollups were kept. Only exposed on the management port:
+//   curl -X POST http://localhost:9090/actuator/rollups
+@Component
+@Endpoint(id = "rollups")
+public class WalletRollupsEndpoint {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WalletRollupsEndpoint.class);
+
+    private final WalletRollups walletRollups;
+    private final TransferWriter transferWriter;
+
+    public WalletRollupsEndpoint(WalletRollups walletRollups, TransferWriter transferWriter) {
+        this.walletRollups = walletRollups;
+        this.transferWriter = transferWriter;
+    }
+
+    @WriteOperation
+    public RebuildResult rebuild() {
+        long start = System.nanoTime();
+        AtomicInteger rollups = new AtomicInteger();
+        // Transfers wait for the rebuild, and are added to the rebuilt rollups
+        transferWriter.runExclusive(() -> rollups.set(walletRollups.rebuild())).join();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        LOG.info("Rebuilt {} wallet rollups in {} ms", rollups.get(), millis);
+        return new RebuildResult(rollups.get(), millis);
+    }
+
+    public record RebuildResult(int rollups, long millis) {}
+}
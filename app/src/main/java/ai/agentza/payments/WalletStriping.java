@@ -0,0 +1,50 @@
+package ai.agentza.payments;
+
+import ai.agentza.model.PayeeRoutes;
+import ai.agentza.model.Wallet;
+import ai.agentza.model.WalletRepository;
+import ai.agentza.model.WalletStripe;
+import ai.agentza.model.WalletStripeRepository;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.stream.IntStream;
+
+// Splits the balance of a wallet into more stripes. The existing balance stays where it is, and the new stripes start
+// empty, so this can be done while the wallet is being paid into.
+//
+// Only wallets kept IN_PLACE can be striped. The journal doesn't record which stripe a transaction went to, so in JOURNAL
+// mode the balance loaded for one stripe would include what the other stripes already hold in memory.
+@Component
+public class WalletStriping {
+
+    private final WalletRepository walletRepository;
+    private final WalletStripeRepository walletStripeRepository;
+    private final PayeeRoutes payeeRoutes;
+    private final BalanceMode balanceMode;
+
+    public WalletStriping(WalletRepository walletRepository, WalletStripeRepository walletStripeRepository, PayeeRoutes payeeRoutes, WalletBalances walletBalances) {
+        this.walletRepository = walletRepository;
+        this.walletStripeRepository = walletStripeRepository;
+        this.payeeRoutes = payeeRoutes;
+        this.balanceMode = walletBalances.getBalanceMode();
+    }
+
+    @Transactional
+    public void stripe(Wallet wallet, int stripes) {
+        int current = Math.max(1, wallet.getStripes());
+        if (balanceMode != BalanceMode.IN_PLACE) {
+            throw new IllegalStateException("Wallets can only be striped in IN_PLACE mode");
+        }
+        if (stripes < current) {
+            throw new IllegalArgumentException("A wallet can't have fewer stripes than it already has");
+        }
+        // The rows must exist before any transfer can move money in or out of them
+        walletStripeRepository.saveAll(IntStream.range(current, stripes)
+                .mapToObj(stripe -> new WalletStripe(wallet.getWalletId(), stripe, 0))
+                .toList());
+        walletRepository.updateStripes(wallet.getWalletId(), stripes);
+        // The routes into the wallet know how many stripes it has
+        payeeRoutes.invalidateWallet(wallet.getWalletId());
+    }
+}
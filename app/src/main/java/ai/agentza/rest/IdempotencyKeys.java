@@ -0,0 +1,128 @@
+package ai.agentza.rest;
+
+import ai.agentza.archive.TransactionArchive;
+import ai.agentza.model.transactions.IdempotencyKey;
+import ai.agentza.model.transactions.IdempotencyKeyRepository;
+import ai.agentza.model.transactions.TransactionRepository;
+import ai.agentza.model.transactions.Withdrawal;
+import ai.agentza.rest.TransactionController.TransactionRequest;
+import ai.agentza.rest.TransactionController.TransactionResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+// The responses of createTransaction requests by the Idempotency-Key they were made with, so that a retried request gets
+// the response of the original one instead of paying twice. Keys are scoped to the paying wallet, and are kept for a
+// limited time and up to a maximum number of keys.
+//
+// Checking a key only hits memory. The keys are also persisted, with the withdrawals and in the idempotency_key table: the
+// keys of recent withdrawals are reloaded at startup, and a key that was evicted from memory is still rejected by the
+// database when it is reused, and answered with the original withdrawal. The table is left alone by the archiver, so keys
+// are effectively kept for as long as the database is, even once their withdrawals are archived.
+@Component
+public class IdempotencyKeys {
+
+    private final Cache<Key, Entry> entries;
+    private final TransactionRepository transactionRepository;
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final TransactionArchive transactionArchive;
+
+    public IdempotencyKeys(
+            TransactionRepository transactionRepository,
+            IdempotencyKeyRepository idempotencyKeyRepository,
+            TransactionArchive transactionArchive,
+            @Value("${agentza.payments.idempotency.max-size:100000}") long maxSize,
+            @Value("${agentza.payments.idempotency.ttl:24h}") Duration ttl,
+            MeterRegistry meterRegistry
+    ) {
+        this.transactionRepository = transactionRepository;
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.transactionArchive = transactionArchive;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, entries, "idempotency-keys");
+        // Load the keys that would still be in memory, had the server not been restarted
+        if (maxSize > 0) {
+            var since = LocalDateTime.now().minus(ttl);
+            for (Withdrawal withdrawal : transactionRepository.findIdempotentWithdrawalsSince(since, Limit.of((int) Math.min(maxSize, Integer.MAX_VALUE)))) {
+                entries.put(
+                        new Key(withdrawal.getWalletId(), withdrawal.getIdempotencyKey()),
+                        new Entry(requestOf(withdrawal), CompletableFuture.completedFuture(TransactionController.toResponse(withdrawal)))
+                );
+            }
+        }
+    }
+
+    /**
+     * Claims the key for the given request. Returns null if the key was free, in which case the caller must complete the
+     * {@code response}, or release the key if the request failed. Otherwise returns the response to the request that
+     * claimed the key first, which may still be in progress.
+     *
+     * @throws IdempotencyKeyReusedException if the key was claimed for a different request
+     */
+    public CompletableFuture<TransactionResponse> claim(String walletId, String idempotencyKey, TransactionRequest request, CompletableFuture<TransactionResponse> response) {
+        Entry claimed = new Entry(request, response);
+        Entry entry = entries.asMap().putIfAbsent(new Key(walletId, idempotencyKey), claimed);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.request().equals(request)) {
+            throw new IdempotencyKeyReusedException(idempotencyKey);
+        }
+        return entry.response();
+    }
+
+    public void release(String walletId, String idempotencyKey, CompletableFuture<TransactionResponse> response) {
+        entries.asMap().computeIfPresent(new Key(walletId, idempotencyKey), (key, entry) -> entry.response() == response ? null : entry);
+    }
+
+    /**
+     * The request and the response of the withdrawal that was persisted with the key, looked up in the transaction table
+     * or, once the withdrawal is archived, in the archive. Empty if no withdrawal was made with the key.
+     */
+    public Optional<Original> findPersisted(String walletId, String idempotencyKey) {
+        return idempotencyKeyRepository.findById(new IdempotencyKey.Key(walletId, idempotencyKey)).flatMap(key -> transactionRepository.findById(key.getTransactionId())
+                .map(withdrawal -> new Original(requestOf((Withdrawal) withdrawal), TransactionController.toResponse(withdrawal)))
+                // Archived before it is deleted from the table, so it is in one or the other
+                .or(() -> transactionArchive.find(walletId, key.getTimestamp(), key.getTimestamp(), null, false, Integer.MAX_VALUE).stream()
+                        .filter(withdrawal -> withdrawal.transactionId().equals(key.getTransactionId()))
+                        .findFirst()
+                        .map(withdrawal -> new Original(new TransactionRequest(withdrawal.payeeId(), -withdrawal.amount()), TransactionController.toResponse(withdrawal)))));
+    }
+
+    public CacheStats stats() {
+        return entries.stats();
+    }
+
+    static TransactionRequest requestOf(Withdrawal withdrawal) {
+        return new TransactionRequest(withdrawal.getPayeeId(), -withdrawal.getAmount());
+    }
+
+    public record Original(TransactionRequest request, TransactionResponse response) {}
+
+    private record Key(String walletId, String idempotencyKey) {}
+
+    private record Entry(TransactionRequest request, CompletableFuture<TransactionResponse> response) {}
+
+    @ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+    public static class IdempotencyKeyReusedException extends RuntimeException {
+        public IdempotencyKeyReusedException(String idempotencyKey) {
+            super("Idempotency key " + idempotencyKey + " was already used for a different transaction");
+        }
+    }
+}
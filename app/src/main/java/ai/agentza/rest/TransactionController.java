@@ -1,144 +1,544 @@
 package ai.agentza.rest;
 
+import ai.agentza.archive.ArchivedTransaction;
 import ai.agentza.model.AgentRepository;
+import ai.agentza.model.Currencies;
+import ai.agentza.model.PayeeRoutes;
+import ai.agentza.model.PaymentContext;
+import ai.agentza.model.Wallet;
 import ai.agentza.model.WalletRepository;
 import ai.agentza.model.payees.AgentPayee;
+import ai.agentza.model.payees.Payee;
 import ai.agentza.model.payees.PayeeRepository;
 import ai.agentza.model.transactions.Deposit;
 import ai.agentza.model.transactions.Transaction;
 import ai.agentza.model.transactions.TransactionRepository;
 import ai.agentza.model.transactions.Withdrawal;
+import ai.agentza.metrics.TransferMetrics;
+import ai.agentza.payments.PaymentEngine;
+import ai.agentza.payments.TransactionFeed;
+import ai.agentza.payments.Transfer;
+import ai.agentza.payments.TransferFailedException;
+import ai.agentza.payments.TransferFailedException.Reason;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.Parameters;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
 import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.security.Principal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.StreamSupport;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/v1")
 public class TransactionController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String PREVIOUS_CURSOR_HEADER = "X-Previous-Cursor";
+    private static final String NDJSON = "application/x-ndjson";
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+    private static final Duration HEARTBEAT_INTERVAL = Duration.ofSeconds(15);
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
     private final TransactionRepository transactionRepository;
     private final WalletRepository walletRepository;
     private final AgentRepository agentRepository;
     private final PayeeRepository payeeRepository;
+    private final PaymentEngine paymentEngine;
+    private final PayeeRoutes payeeRoutes;
+    private final TransactionFeed transactionFeed;
+    private final IdempotencyKeys idempotencyKeys;
+    private final TransferMetrics transferMetrics;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+    private final TransactionHistory transactionHistory;
+    private final ObjectMapper objectMapper;
 
-    public TransactionController(TransactionRepository transactionRepository, WalletRepository walletRepository, AgentRepository agentRepository, PayeeRepository payeeRepository) {
+    public TransactionController(TransactionRepository transactionRepository, WalletRepository walletRepository, AgentRepository agentRepository, PayeeRepository payeeRepository, PaymentEngine paymentEngine, PayeeRoutes payeeRoutes, TransactionFeed transactionFeed, IdempotencyKeys idempotencyKeys, TransferMetrics transferMetrics, PlatformTransactionManager transactionManager, TransactionHistory transactionHistory, ObjectMapper objectMapper) {
         this.transactionRepository = transactionRepository;
         this.walletRepository = walletRepository;
         this.agentRepository = agentRepository;
         this.payeeRepository = payeeRepository;
+        this.paymentEngine = paymentEngine;
+        this.payeeRoutes = payeeRoutes;
+        this.transactionFeed = transactionFeed;
+        this.idempotencyKeys = idempotencyKeys;
+        this.transferMetrics = transferMetrics;
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+        this.transactionHistory = transactionHistory;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping("/wallets/{walletId}/transactions")
     @Parameters(@Parameter(in = ParameterIn.HEADER, name = "X-API-KEY", schema = @Schema(type = "string")))
-    public List<TransactionResponse> listTransactions(
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "A page of transactions ordered by timestamp. The " + NEXT_CURSOR_HEADER + " and " + PREVIOUS_CURSOR_HEADER + " headers hold the cursors of the adjacent pages, when there are any."),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor"),
+            @ApiResponse(responseCode = "403", description = "Not authorized"),
+    })
+    public ResponseEntity<List<TransactionResponse>> listTransactions(
             @PathVariable String walletId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
             Principal principal
     ) {
-        var wallet = walletRepository.findById(walletId).orElseThrow();
-        if (!wallet.getAgentId().equals(principal.getName())) {
-            // TODO better error types and messages
-            throw new RuntimeException("Unauthorized");
-        }
-
-        return StreamSupport.stream(transactionRepository.findByWalletId(walletId).spliterator(), false).map(transaction ->
-             new TransactionResponse(
-                    transaction.getTransactionId(),
-                    transaction.getTimestamp(),
-                    transaction.getWalletId(),
-                    transaction.getAmount(),
-                    transaction.getCurrency(),
-                    transaction.getStatus(),
-                    (transaction instanceof Deposit) ?  "DEPOSIT" : "WITHDRAWAL",
-                    (transaction instanceof Deposit )? ((Deposit) transaction).getPayerDescription() : null,
-                    (transaction instanceof Withdrawal)? ((Withdrawal) transaction).getPayeeId() : null
-                    )
-        ).toList();
+        authorizeWallet(walletId, principal);
+        if (after != null && before != null) {
+            throw new TransactionCursor.InvalidCursorException(after + " and " + before);
+        }
+
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.clamp(limit, 1, MAX_PAGE_SIZE);
+        var page = transactionHistory.page(
+                walletId,
+                from != null ? from : EARLIEST,
+                to != null ? to : LATEST,
+                after != null ? TransactionCursor.decode(after) : null,
+                before != null ? TransactionCursor.decode(before) : null,
+                pageSize
+        );
+
+        var headers = new HttpHeaders();
+        if (!page.transactions().isEmpty()) {
+            if (page.hasNewer()) {
+                headers.add(NEXT_CURSOR_HEADER, TransactionCursor.of(page.transactions().getLast()).encode());
+            }
+            if (page.hasOlder()) {
+                headers.add(PREVIOUS_CURSOR_HEADER, TransactionCursor.of(page.transactions().getFirst()).encode());
+            }
+        }
+        return ResponseEntity.ok().headers(headers).body(page.transactions());
     }
 
-    @PostMapping("/wallets/{walletId}/transactions")
+    @GetMapping(value = "/wallets/{walletId}/transactions", produces = NDJSON)
     @Parameters(@Parameter(in = ParameterIn.HEADER, name = "X-API-KEY", schema = @Schema(type = "string")))
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "All transactions in the time range, one JSON object per line, ordered by timestamp"),
+            @ApiResponse(responseCode = "403", description = "Not authorized"),
+    })
+    public ResponseEntity<StreamingResponseBody> streamTransactions(
+            @PathVariable String walletId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            Principal principal
+    ) {
+        authorizeWallet(walletId, principal);
+
+        StreamingResponseBody body = outputStream -> readOnlyTransactionTemplate.executeWithoutResult(status -> {
+            try (var writer = objectMapper.writer().withRootValueSeparator("\n").writeValues(outputStream)) {
+                boolean[] empty = {true};
+                transactionHistory.forEach(walletId, from != null ? from : EARLIEST, to != null ? to : LATEST, transaction -> {
+                    try {
+                        writer.write(transaction);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    empty[0] = false;
+                });
+                if (!empty[0]) {
+                    outputStream.write('\n');
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(NDJSON)).body(body);
+    }
+
+    @GetMapping(value = "/wallets/{walletId}/transactions", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Parameters({
+            @Parameter(in = ParameterIn.HEADER, name = "X-API-KEY", schema = @Schema(type = "string")),
+            @Parameter(in = ParameterIn.HEADER, name = LAST_EVENT_ID_HEADER, description = "The id of the last event received, to resume after it", schema = @Schema(type = "string"))
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "The transactions of the wallet as they are committed, as server-sent events named after the type of the transaction. " +
+                    "A reset event means that transactions may have been missed since the given " + LAST_EVENT_ID_HEADER + ", which should be caught up with by listing them. " +
+                    "Clients that fall too far behind are disconnected, and should reconnect with the id of the last event they received."),
+            @ApiResponse(responseCode = "403", description = "Not authorized"),
+    })
+    public SseEmitter subscribeTransactions(
+            @PathVariable String walletId,
+            @RequestHeader(name = LAST_EVENT_ID_HEADER, required = false) String lastEventId,
+            Principal principal
+    ) {
+        authorizeWallet(walletId, principal);
+
+        var subscription = transactionFeed.subscribe(walletId, lastEventId);
+        var emitter = new SseEmitter(0L); // no timeout, there is a heartbeat instead
+        emitter.onCompletion(subscription::close);
+        emitter.onError(error -> subscription.close());
+        // Subscribers mostly wait, so each gets a virtual thread of its own rather than one of the request threads
+        Thread.ofVirtual().name("transactions-" + walletId).start(() -> {
+            try (subscription) {
+                if (lastEventId != null && !subscription.isResumed()) {
+                    emitter.send(SseEmitter.event().name("reset").data(""));
+                }
+                while (true) {
+                    var event = subscription.poll(HEARTBEAT_INTERVAL);
+                    if (subscription.isEvicted()) {
+                        break;
+                    }
+                    if (event == null) {
+                        emitter.send(SseEmitter.event().comment("heartbeat"));
+                    } else {
+                        var transaction = toResponse(event);
+                        emitter.send(SseEmitter.event().id(event.id()).name(transaction.type()).data(transaction, MediaType.APPLICATION_JSON));
+                    }
+                }
+                emitter.complete();
+            } catch (IOException | IllegalStateException e) {
+                // The client went away
+            } catch (InterruptedException e) {
+                emitter.complete();
+            }
+        });
+        return emitter;
+    }
+
+    @PostMapping("/wallets/{walletId}/transactions")
+    @Parameters({
+            @Parameter(in = ParameterIn.HEADER, name = "X-API-KEY", schema = @Schema(type = "string")),
+            @Parameter(in = ParameterIn.HEADER, name = IDEMPOTENCY_KEY_HEADER, description = "A unique key for the transaction. A retry with the same key gets the response of the original request instead of paying again.", schema = @Schema(type = "string"))
+    })
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "The withdrawal from the wallet"),
+            @ApiResponse(responseCode = "400", description = "Invalid amount or idempotency key"),
+            @ApiResponse(responseCode = "403", description = "Not authorized"),
+            @ApiResponse(responseCode = "422", description = "The transaction was refused, e.g. for insufficient funds, or the idempotency key was already used for a different transaction"),
+    })
     public TransactionResponse createTransaction(
             @PathVariable String walletId,
             @RequestBody TransactionRequest request,
+            @RequestHeader(name = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
             Principal principal
     ) {
 
         if(request.amount() <= 0){
-            throw new RuntimeException("Invalid amount");
+            throw refuse(Reason.INVALID_AMOUNT);
         }
 
-        var payer = agentRepository.findById(principal.getName()).orElseThrow();
+        // Only found if the wallet belongs to the payer
+        var context = paymentContext(principal.getName(), walletId, request.payeeId())
+                .orElseThrow(() -> refuse(Reason.UNAUTHORIZED));
+
+        if (idempotencyKey == null) {
+            return transfer(context, request, null);
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            throw new InvalidIdempotencyKeyException(idempotencyKey);
+        }
+
+        var response = new CompletableFuture<TransactionResponse>();
+        var original = idempotencyKeys.claim(walletId, idempotencyKey, request, response);
+        if (original != null) {
+            return join(original);
+        }
+        try {
+            TransactionResponse result;
+            try {
+                result = transfer(context, request, idempotencyKey);
+            } catch (DuplicateKeyException e) {
+                // The key outlived its entry in memory, the withdrawal that used it is the original response
+                var persisted = idempotencyKeys.findPersisted(walletId, idempotencyKey).orElseThrow(() -> e);
+                if (!persisted.request().equals(request)) {
+                    throw new IdempotencyKeys.IdempotencyKeyReusedException(idempotencyKey);
+                }
+                result = persisted.response();
+            }
+            response.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            // Nothing was paid, so a retry may try again
+            idempotencyKeys.release(walletId, idempotencyKey, response);
+            response.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    // With the route of the payee cached, only the payer and the source wallet are left to load
+    private Optional<PaymentContext> paymentContext(String agentId, String walletId, String payeeId) {
+        var route = payeeId != null ? payeeRoutes.get(payeeId) : null;
+        if (route != null && route.payerAgentId().equals(agentId)) {
+            return walletRepository.findPaymentSource(agentId, walletId).map(context -> context.withRoute(route));
+        }
+        long generation = payeeRoutes.generation();
+        var context = walletRepository.findPaymentContext(agentId, walletId, payeeId);
+        if (context.isPresent() && context.get().route() != null) {
+            payeeRoutes.put(payeeId, context.get().route(), generation);
+        }
+        return context;
+    }
+
+    private TransactionResponse transfer(PaymentContext context, TransactionRequest request, String idempotencyKey) {
+        var route = context.route();
+        if (route == null) {
+            // Find out why, only on this failure path
+            var payee = request.payeeId() != null ? payeeRepository.findById(request.payeeId()).orElse(null) : null;
+            throw refuse(payee == null ? Reason.UNKNOWN_PAYEE
+                    : !payee.getPayerAgentId().equals(context.payer().getAgentId()) ? Reason.UNAUTHORIZED
+                    : !(payee instanceof AgentPayee) ? Reason.UNSUPPORTED_PAYEE_TYPE
+                    : Reason.UNKNOWN_PAYEE_WALLET);
+        }
+        if (!route.currency().equals(context.source().getCurrency())) {
+            throw refuse(Reason.CURRENCY_MISMATCH);
+        }
+
+        Transfer transfer;
+        try {
+            var payout = new PaymentEngine.Payout(route.walletId(), route.stripes(), request.amount(), request.payeeId(), idempotencyKey);
+            transfer = join(paymentEngine.transfer(context.source(), payout, context.payer().getName()));
+        } catch (TransferFailedException e) {
+            transferMetrics.failed(e.getReason());
+            throw e;
+        }
+        transferMetrics.succeeded();
+        return toResponse(transfer);
+    }
 
-        var wallet = walletRepository.findById(walletId).orElseThrow();
-        if (!wallet.getAgentId().equals(principal.getName())) {
-            // TODO implement this as a filter in the repository
-            throw new RuntimeException("Unauthorized");
+    private TransferFailedException refuse(Reason reason) {
+        transferMetrics.failed(reason);
+        return new TransferFailedException(reason);
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
         }
+    }
 
-        var payee = payeeRepository.findById(request.payeeId()).orElseThrow();
-        if (!payee.getPayerAgentId().equals(principal.getName())) {
-            // TODO implement this as a filter in the repository
-            throw new RuntimeException("Unauthorized");
+    @PostMapping("/wallets/{walletId}/transactions/batch")
+    @Parameters(@Parameter(in = ParameterIn.HEADER, name = "X-API-KEY", schema = @Schema(type = "string")))
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "One result per requested transaction, in the same order. Each result holds either the withdrawal or the reason the transaction failed."),
+            @ApiResponse(responseCode = "400", description = "Too many transactions, or an invalid amount in an atomic batch"),
+            @ApiResponse(responseCode = "403", description = "Not authorized"),
+            @ApiResponse(responseCode = "422", description = "An atomic batch was refused, with the reason of the first transaction that failed"),
+    })
+    public List<BatchTransactionResult> createTransactions(
+            @PathVariable String walletId,
+            @RequestBody List<TransactionRequest> requests,
+            @Parameter(description = "Whether all the transactions must go through or none at all") @RequestParam(defaultValue = "false") boolean atomic,
+            Principal principal
+    ) {
+        if (requests.size() > MAX_BATCH_SIZE) {
+            throw new BatchTooLargeException(requests.size());
         }
 
-        if (payee instanceof AgentPayee agentPayee) {
-            var payeeWallet = walletRepository.findById(
-                    agentPayee.getWalletId() != null ? agentPayee.getWalletId() : agentRepository.findById(agentPayee.getAgentId()).orElseThrow().getDefaultWalletId()
-            ).orElseThrow();
+        var payer = agentRepository.findById(principal.getName()).orElseThrow();
+
+        var wallet = walletRepository.findById(walletId)
+                .filter(source -> source.getAgentId().equals(principal.getName()))
+                .orElseThrow(() -> refuse(Reason.UNAUTHORIZED));
+
+        // Resolve all payees, their agents and their wallets with one query each
+        Map<String, Payee> payees = new HashMap<>();
+        payeeRepository.findAllById(requests.stream().map(TransactionRequest::payeeId).filter(Objects::nonNull).collect(Collectors.toSet()))
+                .forEach(payee -> payees.put(payee.getPayeeId(), payee));
+        Map<String, String> defaultWalletIds = new HashMap<>();
+        agentRepository.findAllById(payees.values().stream()
+                        .filter(payee -> payee instanceof AgentPayee agentPayee && agentPayee.getWalletId() == null)
+                        .map(payee -> ((AgentPayee) payee).getAgentId())
+                        .collect(Collectors.toSet()))
+                .forEach(agent -> defaultWalletIds.put(agent.getAgentId(), agent.getDefaultWalletId()));
+        Map<String, Wallet> payeeWallets = new HashMap<>();
+        walletRepository.findAllById(payees.values().stream()
+                        .filter(payee -> payee instanceof AgentPayee)
+                        .map(payee -> payeeWalletId((AgentPayee) payee, defaultWalletIds))
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toSet()))
+                .forEach(payeeWallet -> payeeWallets.put(payeeWallet.getWalletId(), payeeWallet));
+
+        var results = new BatchTransactionResult[requests.size()];
+        List<PaymentEngine.Payout> payouts = new ArrayList<>(requests.size());
+        List<Integer> payoutIndexes = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            var request = requests.get(i);
+            Reason error = null;
+            var payee = request.payeeId() != null ? payees.get(request.payeeId()) : null;
+            Wallet payeeWallet = null;
+            if (request.amount() <= 0) {
+                error = Reason.INVALID_AMOUNT;
+            } else if (payee == null) {
+                error = Reason.UNKNOWN_PAYEE;
+            } else if (!payee.getPayerAgentId().equals(principal.getName())) {
+                error = Reason.UNAUTHORIZED;
+            } else if (!(payee instanceof AgentPayee agentPayee)) {
+                error = Reason.UNSUPPORTED_PAYEE_TYPE;
+            } else if ((payeeWallet = payeeWallets.get(payeeWalletId(agentPayee, defaultWalletIds))) == null) {
+                error = Reason.UNKNOWN_PAYEE_WALLET;
+            } else if (!payeeWallet.getCurrency().equals(wallet.getCurrency())) {
+                error = Reason.CURRENCY_MISMATCH;
+            }
 
-            if (!payeeWallet.getCurrency().equals(wallet.getCurrency())) {
-                throw new RuntimeException("Currency mismatch");
+            if (error == null) {
+                payouts.add(new PaymentEngine.Payout(payeeWallet.getWalletId(), payeeWallet.getStripes(), request.amount(), payee.getPayeeId(), null));
+                payoutIndexes.add(i);
+            } else if (atomic) {
+                throw refuse(error);
+            } else {
+                transferMetrics.failed(error);
+                results[i] = new BatchTransactionResult(null, error.getMessage());
             }
+        }
 
-            if (wallet.getBalance() < request.amount()) {
-                throw new RuntimeException("Insufficient funds");
+        var transfers = paymentEngine.transferAll(wallet, payouts, payer.getName(), atomic);
+        for (int i = 0; i < transfers.size(); i++) {
+            BatchTransactionResult result;
+            try {
+                result = new BatchTransactionResult(toResponse(transfers.get(i).join()), null);
+                transferMetrics.succeeded();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof TransferFailedException cause) {
+                    transferMetrics.failed(cause.getReason());
+                }
+                if (atomic && e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                result = new BatchTransactionResult(null, e.getCause().getMessage());
             }
+            results[payoutIndexes.get(i)] = result;
+        }
+        return List.of(results);
+    }
+
+    private static String payeeWalletId(AgentPayee payee, Map<String, String> defaultWalletIds) {
+        return payee.getWalletId() != null ? payee.getWalletId() : defaultWalletIds.get(payee.getAgentId());
+    }
 
-            payeeWallet.setBalance(payeeWallet.getBalance() + request.amount());
-            walletRepository.save(payeeWallet);
-            transactionRepository.save(new Deposit(
-                    LocalDateTime.now(),
-                    payeeWallet.getWalletId(),
-                    request.amount(),
-                    payeeWallet.getCurrency(),
-                    Transaction.TransactionStatus.COMPLETED,
-                    payer.getName()
-            ));
-
-            wallet.setBalance(wallet.getBalance() - request.amount());
-            walletRepository.save(wallet);
-            var withdrawal = transactionRepository.save(new Withdrawal(
-                    LocalDateTime.now(),
-                    wallet.getWalletId(),
-                    -request.amount(),
-                    wallet.getCurrency(),
-                    Transaction.TransactionStatus.COMPLETED,
-                    payee.getPayeeId()
-            ));
-
-            return new TransactionResponse(
-                    withdrawal.getTransactionId(),
-                    withdrawal.getTimestamp(),
-                    withdrawal.getWalletId(),
-                    withdrawal.getAmount(),
-                    withdrawal.getCurrency(),
-                    withdrawal.getStatus(),
-                    "WITHDRAWAL",
-                    null,
-                    withdrawal.getPayeeId()
-            );
-        } else {
-            throw new RuntimeException("Unsupported payee type");
-        }
-    }
-
-    public record TransactionRequest (String payeeId, Double amount){}
-    public record TransactionResponse (String transactionId, LocalDateTime timestamp, String walletId, Double amount, String currency, Transaction.TransactionStatus status, String type, String payerDescription, String payeeId){}
+    private void authorizeWallet(String walletId, Principal principal) {
+        if (walletRepository.findById(walletId).filter(wallet -> wallet.getAgentId().equals(principal.getName())).isEmpty()) {
+            throw new WalletController.WalletNotAuthorizedException(walletId);
+        }
+    }
+
+    // Refused transfers, as the status their reason stands for
+    @ExceptionHandler(TransferFailedException.class)
+    public void refused(TransferFailedException e, HttpServletResponse response) throws IOException {
+        response.sendError(switch (e.getReason()) {
+            case UNAUTHORIZED -> HttpStatus.FORBIDDEN.value();
+            case INVALID_AMOUNT -> HttpStatus.BAD_REQUEST.value();
+            default -> HttpStatus.UNPROCESSABLE_ENTITY.value();
+        }, e.getMessage());
+    }
+
+    static TransactionResponse toResponse(Transaction transaction) {
+        return new TransactionResponse(
+                transaction.getTransactionId(),
+                transaction.getTimestamp(),
+                transaction.getWalletId(),
+                transaction.getAmount(),
+                transaction.getScale(),
+                transaction.getCurrency(),
+                transaction.getStatus(),
+                (transaction instanceof Deposit) ?  "DEPOSIT" : "WITHDRAWAL",
+                (transaction instanceof Deposit )? ((Deposit) transaction).getPayerDescription() : null,
+                (transaction instanceof Withdrawal)? ((Withdrawal) transaction).getPayeeId() : null
+        );
+    }
+
+    static TransactionResponse toResponse(ArchivedTransaction transaction) {
+        return new TransactionResponse(
+                transaction.transactionId(),
+                transaction.timestamp(),
+                transaction.walletId(),
+                transaction.amount(),
+                Currencies.scale(transaction.currency()),
+                transaction.currency(),
+                Transaction.TransactionStatus.values()[transaction.status()],
+                transaction.type(),
+                transaction.payerDescription(),
+                transaction.payeeId()
+        );
+    }
+
+    private static TransactionResponse toResponse(Transfer transfer) {
+        return new TransactionResponse(
+                transfer.withdrawalId(),
+                transfer.timestamp(),
+                transfer.sourceWalletId(),
+                -transfer.amount(),
+                Currencies.scale(transfer.currency()),
+                transfer.currency(),
+                Transaction.TransactionStatus.COMPLETED,
+                "WITHDRAWAL",
+                null,
+                transfer.payeeId()
+        );
+    }
+
+    private static TransactionResponse toResponse(TransactionFeed.Event event) {
+        var transfer = event.transfer();
+        if (!event.deposit()) {
+            return toResponse(transfer);
+        }
+        return new TransactionResponse(
+                transfer.depositId(),
+                transfer.timestamp(),
+                transfer.targetWalletId(),
+                transfer.amount(),
+                Currencies.scale(transfer.currency()),
+                transfer.currency(),
+                Transaction.TransactionStatus.COMPLETED,
+                "DEPOSIT",
+                transfer.payerDescription(),
+                null
+        );
+    }
+
+    public record TransactionRequest (String payeeId, long amount){}
+    public record TransactionResponse (String transactionId, LocalDateTime timestamp, String walletId, long amount, int scale, String currency, Transaction.TransactionStatus status, String type, String payerDescription, String payeeId){}
+    public record BatchTransactionResult (TransactionResponse transaction, String error){}
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public static class InvalidIdempotencyKeyException extends RuntimeException {
+        public InvalidIdempotencyKeyException(String idempotencyKey) {
+            super("Invalid idempotency key " + idempotencyKey);
+        }
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public static class BatchTooLargeException extends RuntimeException {
+        public BatchTooLargeException(int size) {
+            super("At most " + MAX_BATCH_SIZE + " transactions can be made at once, got " + size);
+        }
+    }
 }
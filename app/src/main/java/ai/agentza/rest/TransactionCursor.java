@@ -0,0 +1,56 @@
+package ai.agentza.rest;
+
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.Map;
+
+// Opaque cursor into the transactions of a wallet, positioned on the (timestamp, transactionId) of a transaction.
+record TransactionCursor(LocalDateTime timestamp, String transactionId) {
+
+    static TransactionCursor of(TransactionController.TransactionResponse transaction) {
+        return new TransactionCursor(transaction.timestamp(), transaction.transactionId());
+    }
+
+    static TransactionCursor decode(String cursor) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf('|');
+            if (separator < 0) {
+                throw new InvalidCursorException(cursor);
+            }
+            return new TransactionCursor(LocalDateTime.parse(decoded.substring(0, separator)), decoded.substring(separator + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidCursorException(cursor);
+        }
+    }
+
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((timestamp + "|" + transactionId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    KeysetScrollPosition forward() {
+        return ScrollPosition.forward(keys());
+    }
+
+    KeysetScrollPosition backward() {
+        return ScrollPosition.backward(keys());
+    }
+
+    private Map<String, Object> keys() {
+        return Map.of("timestamp", timestamp, "transactionId", transactionId);
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    static class InvalidCursorException extends RuntimeException {
+        InvalidCursorException(String cursor) {
+            super("Invalid cursor " + cursor);
+        }
+    }
+}
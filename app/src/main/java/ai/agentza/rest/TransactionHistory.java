@@ -0,0 +1,138 @@
+package ai.agentza.rest;
+
+import ai.agentza.archive.ArchivedTransaction;
+import ai.agentza.archive.TransactionArchive;
+import ai.agentza.model.transactions.Transaction;
+import ai.agentza.model.transactions.TransactionRepository;
+import ai.agentza.rest.TransactionController.TransactionResponse;
+import jakarta.persistence.EntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// The transactions of a wallet, from both the transaction table and the TransactionArchive. All the transactions of a
+// wallet before the point it is archived until are in the archive, and the ones from then on in the table, so a page of
+// transactions is the end of the archived ones, the start of the ones in the table, or both.
+@Component
+class TransactionHistory {
+
+    private static final Sort PAGE_ORDER = Sort.by("timestamp", "transactionId");
+
+    private final TransactionRepository transactionRepository;
+    private final TransactionArchive transactionArchive;
+    private final EntityManager entityManager;
+
+    TransactionHistory(TransactionRepository transactionRepository, TransactionArchive transactionArchive, EntityManager entityManager) {
+        this.transactionRepository = transactionRepository;
+        this.transactionArchive = transactionArchive;
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * A page of the transactions between {@code from} and {@code to} inclusive, ordered by timestamp. The page starts right
+     * after {@code after}, or ends right before {@code before}, or else is the first page.
+     */
+    Page page(String walletId, LocalDateTime from, LocalDateTime to, TransactionCursor after, TransactionCursor before, int pageSize) {
+        var range = new Range(transactionArchive.archivedUntil(walletId), from, to);
+
+        if (before == null) {
+            if (range.archived() && (after == null || range.isArchived(after))) {
+                var archived = findArchived(walletId, range, after, false, pageSize + 1);
+                if (archived.size() > pageSize) {
+                    return new Page(toResponses(archived.subList(0, pageSize), List.of()), true, after != null);
+                }
+                // The rest of the page is the start of the table
+                int rest = pageSize - archived.size();
+                var window = findLive(walletId, range, ScrollPosition.keyset(), Math.max(rest, 1));
+                return new Page(toResponses(archived, rest == 0 ? List.of() : window.getContent()), rest == 0 ? !window.isEmpty() : window.hasNext(), after != null);
+            }
+            var window = findLive(walletId, range, after != null ? after.forward() : ScrollPosition.keyset(), pageSize);
+            return new Page(toResponses(List.of(), window.getContent()), window.hasNext(), after != null);
+        }
+
+        // When scrolling backward, the page "continues" towards older transactions
+        if (range.isArchived(before)) {
+            var archived = findArchived(walletId, range, before, true, pageSize + 1);
+            return new Page(toResponses(tail(archived, pageSize), List.of()), true, archived.size() > pageSize);
+        }
+        var window = findLive(walletId, range, before.backward(), pageSize);
+        if (window.size() == pageSize || !range.archived()) {
+            boolean hasOlder = window.hasNext() || (range.archived() && !findArchived(walletId, range, null, true, 1).isEmpty());
+            return new Page(toResponses(List.of(), window.getContent()), true, hasOlder);
+        }
+        // The rest of the page is the end of the archive
+        int rest = pageSize - window.size();
+        var archived = findArchived(walletId, range, null, true, rest + 1);
+        return new Page(toResponses(tail(archived, rest), window.getContent()), true, archived.size() > rest);
+    }
+
+    /**
+     * Passes all the transactions between {@code from} and {@code to} inclusive to {@code consumer}, ordered by timestamp.
+     * Must be called in a transaction.
+     */
+    void forEach(String walletId, LocalDateTime from, LocalDateTime to, Consumer<TransactionResponse> consumer) {
+        var range = new Range(transactionArchive.archivedUntil(walletId), from, to);
+        if (range.archived()) {
+            transactionArchive.forEach(walletId, range.from(), range.archivedTo(), transaction -> consumer.accept(TransactionController.toResponse(transaction)));
+        }
+        try (var transactions = transactionRepository.streamByWalletIdAndTimestampBetweenOrderByTimestampAscTransactionIdAsc(walletId, range.liveFrom(), range.to())) {
+            transactions.forEach(transaction -> {
+                consumer.accept(TransactionController.toResponse(transaction));
+                // Keep the persistence context from growing with the number of rows
+                entityManager.detach(transaction);
+            });
+        }
+    }
+
+    private Window<Transaction> findLive(String walletId, Range range, ScrollPosition position, int limit) {
+        return transactionRepository.findByWalletIdAndTimestampBetween(walletId, range.liveFrom(), range.to(), position, Limit.of(limit), PAGE_ORDER);
+    }
+
+    private List<ArchivedTransaction> findArchived(String walletId, Range range, TransactionCursor cursor, boolean backward, int limit) {
+        var position = cursor != null ? new TransactionArchive.Position(cursor.timestamp(), cursor.transactionId()) : null;
+        return transactionArchive.find(walletId, range.from(), range.archivedTo(), position, backward, limit);
+    }
+
+    private static List<TransactionResponse> toResponses(List<ArchivedTransaction> archived, List<Transaction> live) {
+        List<TransactionResponse> responses = new ArrayList<>(archived.size() + live.size());
+        archived.forEach(transaction -> responses.add(TransactionController.toResponse(transaction)));
+        live.forEach(transaction -> responses.add(TransactionController.toResponse(transaction)));
+        return responses;
+    }
+
+    private static <T> List<T> tail(List<T> list, int size) {
+        return list.subList(Math.max(0, list.size() - size), list.size());
+    }
+
+    record Page(List<TransactionResponse> transactions, boolean hasNewer, boolean hasOlder) {}
+
+    // The requested range, split at the point the wallet is archived until (null if it isn't): the archive holds the
+    // transactions from `from` to `archivedTo`, and the table the ones from `liveFrom` to `to`.
+    private record Range(LocalDateTime archivedUntil, LocalDateTime from, LocalDateTime to) {
+
+        boolean archived() {
+            return archivedUntil != null && from.isBefore(archivedUntil) && !from.isAfter(to);
+        }
+
+        boolean isArchived(TransactionCursor cursor) {
+            return archivedUntil != null && cursor.timestamp().isBefore(archivedUntil);
+        }
+
+        LocalDateTime archivedTo() {
+            LocalDateTime lastArchived = archivedUntil.minus(1, ChronoUnit.MICROS);
+            return to.isBefore(lastArchived) ? to : lastArchived;
+        }
+
+        LocalDateTime liveFrom() {
+            return archivedUntil != null && from.isBefore(archivedUntil) ? archivedUntil : from;
+        }
+    }
+}
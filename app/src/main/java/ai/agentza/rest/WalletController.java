@@ -2,6 +2,11 @@ package ai.agentza.rest;
 
 import ai.agentza.model.Wallet;
 import ai.agentza.model.WalletRepository;
+import ai.agentza.model.WalletRollup;
+import ai.agentza.model.WalletRollupRepository;
+import ai.agentza.payments.WalletBalances;
+import ai.agentza.payments.WalletStriping;
+import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.Parameters;
 import io.swagger.v3.oas.annotations.enums.ParameterIn;
@@ -9,44 +14,156 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
+import java.time.LocalDate;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/v1/wallets")
 public class WalletController {
 
+    private static final int MAX_STRIPES = 64;
+    private static final LocalDate EARLIEST = LocalDate.of(1970, 1, 1);
+    private static final LocalDate LATEST = LocalDate.of(9999, 12, 31);
+
     private final WalletRepository walletRepository;
-    public WalletController(WalletRepository walletRepository) {
+    private final WalletBalances walletBalances;
+    private final WalletStriping walletStriping;
+    private final WalletRollupRepository walletRollupRepository;
+
+    public WalletController(WalletRepository walletRepository, WalletBalances walletBalances, WalletStriping walletStriping, WalletRollupRepository walletRollupRepository) {
         this.walletRepository = walletRepository;
+        this.walletBalances = walletBalances;
+        this.walletStriping = walletStriping;
+        this.walletRollupRepository = walletRollupRepository;
     }
 
     @GetMapping("/")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "List of wallets", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = Wallet.class))}),
+            @ApiResponse(responseCode = "200", description = "List of wallets", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = WalletResponse.class))}),
             @ApiResponse(responseCode = "403", description = "Not authorized"),
     })
     @Parameters(@Parameter(in = ParameterIn.HEADER, name = "X-API-KEY", schema = @Schema(type = "string")))
-    public Iterable<Wallet> listWallets(Principal principal) {
-        return walletRepository.findByAgentId(principal.getName());
+    public List<WalletResponse> listWallets(Principal principal) {
+        return walletRepository.findByAgentId(principal.getName()).stream()
+                .map(wallet -> WalletResponse.of(wallet, walletBalances.balanceOf(wallet)))
+                .toList();
     }
 
     @PostMapping("/")
     @Parameters(@Parameter(in = ParameterIn.HEADER, name = "X-API-KEY", schema = @Schema(type = "string")))
-    public Wallet createWallet(
+    public WalletResponse createWallet(
             @RequestBody String description,
             Principal principal
     ) {
-        return walletRepository.save(
+        var wallet = walletRepository.save(
                 new Wallet(
                         UUID.randomUUID().toString(),
                         principal.getName(),
                         description,
                         "USD",
-                        0.0
+                        0
                 )
         );
+        return WalletResponse.of(wallet, wallet.getBalance());
+    }
+
+    @Operation(summary = "Split the balance of a wallet into stripes", description = "Credits to a striped wallet are spread over its stripes, so that a wallet receiving many payments at once doesn't become a bottleneck. The number of stripes can only grow.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Wallet striped successfully", content = {@Content(mediaType = "application/json", schema = @Schema(implementation = WalletResponse.class))}),
+            @ApiResponse(responseCode = "400", description = "Invalid number of stripes"),
+            @ApiResponse(responseCode = "403", description = "Not authorized"),
+            @ApiResponse(responseCode = "409", description = "Balances are kept in JOURNAL mode, where wallets can't be striped"),
+    })
+    @PutMapping("/{walletId}/stripes")
+    @Parameters(@Parameter(in = ParameterIn.HEADER, name = "X-API-KEY", schema = @Schema(type = "string")))
+    public WalletResponse stripeWallet(
+            @PathVariable String walletId,
+            @RequestBody int stripes,
+            Principal principal
+    ) {
+        var wallet = authorizedWallet(walletId, principal);
+        if (stripes < 1 || stripes > MAX_STRIPES) {
+            throw new InvalidStripesException(stripes);
+        }
+        try {
+            walletStriping.stripe(wallet, stripes);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidStripesException(stripes);
+        } catch (IllegalStateException e) {
+            throw new StripingNotSupportedException();
+        }
+        var striped = walletRepository.findById(walletId).orElseThrow();
+        return WalletResponse.of(striped, walletBalances.balanceOf(striped));
+    }
+
+    @Operation(summary = "Daily or monthly statements of a wallet", description = "The number of transactions, the total received and spent, and the closing balance of every day or month with transactions between from and to, ordered by date.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Statements of the periods with transactions"),
+            @ApiResponse(responseCode = "403", description = "Not authorized"),
+    })
+    @GetMapping("/{walletId}/statements")
+    @Parameters(@Parameter(in = ParameterIn.HEADER, name = "X-API-KEY", schema = @Schema(type = "string")))
+    public List<StatementResponse> listStatements(
+            @PathVariable String walletId,
+            @RequestParam(defaultValue = "DAY") WalletRollup.Period period,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            Principal principal
+    ) {
+        var wallet = authorizedWallet(walletId, principal);
+        return walletRollupRepository.findByWalletIdAndPeriodAndPeriodStartBetweenOrderByPeriodStart(
+                        walletId,
+                        period,
+                        period.startOf(from != null ? from : EARLIEST),
+                        to != null ? to : LATEST
+                ).stream()
+                .map(rollup -> StatementResponse.of(rollup, wallet))
+                .toList();
+    }
+
+    // Unknown wallets are refused like the wallets of other agents, so that their ids can't be probed
+    private Wallet authorizedWallet(String walletId, Principal principal) {
+        return walletRepository.findById(walletId)
+                .filter(wallet -> wallet.getAgentId().equals(principal.getName()))
+                .orElseThrow(() -> new WalletNotAuthorizedException(walletId));
+    }
+
+    public record WalletResponse (String walletId, String agentId, String description, String currency, long balance, int scale, int stripes){
+        static WalletResponse of(Wallet wallet, long balance) {
+            return new WalletResponse(wallet.getWalletId(), wallet.getAgentId(), wallet.getDescription(), wallet.getCurrency(), balance, wallet.getScale(), Math.max(1, wallet.getStripes()));
+        }
+    }
+
+    public record StatementResponse (WalletRollup.Period period, LocalDate start, LocalDate end, long transactions, long totalIn, long totalOut, long closingBalance, int scale, String currency){
+        static StatementResponse of(WalletRollup rollup, Wallet wallet) {
+            return new StatementResponse(rollup.getPeriod(), rollup.getPeriodStart(), rollup.getPeriod().next(rollup.getPeriodStart()), rollup.getTransactions(), rollup.getTotalIn(), rollup.getTotalOut(), rollup.getClosingBalance(), wallet.getScale(), wallet.getCurrency());
+        }
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public static class InvalidStripesException extends RuntimeException {
+        public InvalidStripesException(int stripes) {
+            super("Invalid number of stripes " + stripes);
+        }
+    }
+
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public static class StripingNotSupportedException extends RuntimeException {
+        public StripingNotSupportedException() {
+            super("Wallets can't be striped in JOURNAL mode");
+        }
+    }
+
+    @ResponseStatus(HttpStatus.FORBIDDEN)
+    public static class WalletNotAuthorizedException extends RuntimeException {
+        public WalletNotAuthorizedException(String walletId) {
+            super("Not authorized for wallet " + walletId);
+        }
     }
 }
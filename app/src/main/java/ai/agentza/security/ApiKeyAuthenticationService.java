@@ -2,13 +2,32 @@ package ai.agentza.security;
 
 import ai.agentza.model.ApiKey;
 import ai.agentza.model.ApiKeyRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.stereotype.Service;
-import java.util.Optional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// A key is dropped from the caches once a change to it is committed. Entity changes are picked up by the EntityListener,
+// changes made with bulk queries must call invalidate themselves. As with the PayeeRoutes, a principal loaded while a change
+// was in flight is only kept if no change was committed in the meantime.
 @Service
 public class ApiKeyAuthenticationService {
 
@@ -16,18 +35,142 @@ public class ApiKeyAuthenticationService {
 
     private final ApiKeyRepository apiKeyRepository;
 
-    public ApiKeyAuthenticationService(ApiKeyRepository apiKeyRepository) {
+    // Resolved principals, so that authenticating a request doesn't cost a database round trip.
+    private final Cache<String, ApiKeyPrincipal> principals;
+
+    // Keys that were recently looked up and don't exist. Kept apart from the principals, so that a flood of bad keys can
+    // only evict other bad keys.
+    private final Cache<String, Boolean> unknownKeys;
+    private final AtomicLong generation = new AtomicLong();
+
+    // Lookups answered from the cache, from the database, and rejected keys
+    private final Timer cachedLookups;
+    private final Timer loadedLookups;
+    private final Timer rejectedLookups;
+
+    public ApiKeyAuthenticationService(
+            ApiKeyRepository apiKeyRepository,
+            @Value("${agentza.auth.cache.max-size:10000}") long maxSize,
+            @Value("${agentza.auth.cache.ttl:5m}") Duration ttl,
+            @Value("${agentza.auth.cache.negative-max-size:10000}") long negativeMaxSize,
+            @Value("${agentza.auth.cache.negative-ttl:30s}") Duration negativeTtl,
+            MeterRegistry meterRegistry
+    ) {
         this.apiKeyRepository = apiKeyRepository;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        this.unknownKeys = Caffeine.newBuilder()
+                .maximumSize(negativeMaxSize)
+                .expireAfterWrite(negativeTtl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "auth.principals");
+        CaffeineCacheMetrics.monitor(meterRegistry, unknownKeys, "auth.unknown-keys");
+        this.cachedLookups = lookupTimer(meterRegistry, "cached");
+        this.loadedLookups = lookupTimer(meterRegistry, "loaded");
+        this.rejectedLookups = lookupTimer(meterRegistry, "rejected");
+    }
+
+    private static Timer lookupTimer(MeterRegistry meterRegistry, String lookup) {
+        return Timer.builder("agentza.auth.lookup")
+                .description("Time to authenticate a request by its API key")
+                .tag("lookup", lookup)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
     }
 
     public Authentication getApiKeyAuthentication(HttpServletRequest request) {
+        long start = System.nanoTime();
         String apiKey = request.getHeader(AUTH_TOKEN_HEADER_NAME);
-        if (apiKey != null) {
-            Optional<ApiKey> apiKeyOptional = apiKeyRepository.findById(apiKey);
-            if (apiKeyOptional.isPresent()) {
-                return new ApiKeyAuthentication(new ApiKeyPrincipal(apiKey, apiKeyOptional.get().getAgentId()), AuthorityUtils.NO_AUTHORITIES);
+        if (apiKey != null && unknownKeys.getIfPresent(apiKey) == null) {
+            Timer lookup = cachedLookups;
+            // Not loaded with principals.get(apiKey, loader): Caffeine runs the loader under a lock, which would pin a
+            // virtual thread to its carrier for the whole database round trip. Concurrent misses of the same key are
+            // therefore not coalesced, and each of them queries the database.
+            ApiKeyPrincipal principal = principals.getIfPresent(apiKey);
+            long loadedAt = generation.get();
+            if (principal == null) {
+                lookup = loadedLookups;
+                principal = loadPrincipal(apiKey);
+                if (principal != null) {
+                    principals.put(apiKey, principal);
+                }
             }
+            if (principal != null) {
+                lookup.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                dropIfChangedSince(loadedAt, apiKey);
+                return new ApiKeyAuthentication(principal, AuthorityUtils.NO_AUTHORITIES);
+            }
+            unknownKeys.put(apiKey, Boolean.TRUE);
+            dropIfChangedSince(loadedAt, apiKey);
         }
+        rejectedLookups.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         throw new BadCredentialsException("Invalid API Key");
     }
-}
\ No newline at end of file
+
+    /**
+     * Drops anything cached for the given API key, once the current transaction commits. Must be called whenever a key is
+     * created, revoked or reassigned other than through the ApiKey entity, otherwise the old answer is given until its
+     * cache entry expires.
+     */
+    public void invalidate(String apiKey) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            drop(apiKey);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                drop(apiKey);
+            }
+        });
+    }
+
+    private void drop(String apiKey) {
+        generation.incrementAndGet();
+        principals.invalidate(apiKey);
+        unknownKeys.invalidate(apiKey);
+    }
+
+    // A change committed since the lookup started has bumped the generation, but may have dropped the key before it was
+    // cached again
+    private void dropIfChangedSince(long loadedAt, String apiKey) {
+        if (generation.get() != loadedAt) {
+            principals.invalidate(apiKey);
+            unknownKeys.invalidate(apiKey);
+        }
+    }
+
+    public CacheStats principalCacheStats() {
+        return principals.stats();
+    }
+
+    public CacheStats unknownKeyCacheStats() {
+        return unknownKeys.stats();
+    }
+
+    private ApiKeyPrincipal loadPrincipal(String apiKey) {
+        return apiKeyRepository.findById(apiKey).map(ApiKey::getAgentId).map(agentId -> new ApiKeyPrincipal(apiKey, agentId)).orElse(null);
+    }
+
+    // Hibernate creates its own instance of an entity listener. The service is looked up lazily, as it depends on the
+    // ApiKeyRepository, and so on the entity manager that creates the listener.
+    public static class EntityListener {
+
+        private final ObjectProvider<ApiKeyAuthenticationService> authenticationService;
+
+        public EntityListener(ObjectProvider<ApiKeyAuthenticationService> authenticationService) {
+            this.authenticationService = authenticationService;
+        }
+
+        @PostPersist
+        @PostUpdate
+        @PostRemove
+        void changed(ApiKey apiKey) {
+            authenticationService.getObject().invalidate(apiKey.getApiKey());
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package ai.agentza.security;
 
+import jakarta.servlet.DispatcherType;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -21,6 +23,10 @@ public class SecurityConfig {
                   authRegistry -> authRegistry
                           .requestMatchers(  "/api/docs", "/api/browser", "/api/swagger-ui/**", "/api/docs/swagger-config", "/api/swagger-resources/**").permitAll()
                           .requestMatchers("/api/v1/**").authenticated()
+                          // The error page of a request that was already authorized, so that its status reaches the client
+                          .dispatcherTypeMatchers(DispatcherType.ERROR).permitAll()
+                          // Only served on the management port, which is bound to localhost
+                          .requestMatchers(EndpointRequest.toAnyEndpoint()).permitAll()
               )
           .sessionManagement(sessionConf -> sessionConf.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
           .addFilterBefore(filter, UsernamePasswordAuthenticationFilter.class);
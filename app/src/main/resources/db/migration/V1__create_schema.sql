@@ -0,0 +1,67 @@
+-- The schema of the JPA model as of the first release with migrations
+create table agent (
+    agent_id varchar(255) not null,
+    default_wallet_id varchar(255),
+    name varchar(255),
+    primary key (agent_id)
+);
+
+create table api_key (
+    agent_id varchar(255),
+    api_key varchar(255) not null,
+    primary key (api_key)
+);
+
+create table wallet (
+    stripes integer not null,
+    balance bigint not null,
+    agent_id varchar(255),
+    currency varchar(255),
+    description varchar(255),
+    wallet_id varchar(255) not null,
+    primary key (wallet_id)
+);
+
+create table wallet_stripe (
+    stripe integer not null,
+    balance bigint not null,
+    wallet_id varchar(255) not null,
+    primary key (stripe, wallet_id)
+);
+
+create table balance_checkpoint (
+    balance bigint not null,
+    journal_sequence bigint not null,
+    updated_at timestamp(6),
+    wallet_id varchar(255) not null,
+    primary key (wallet_id)
+);
+
+create table payee (
+    type varchar(31) not null,
+    account_nbr varchar(255),
+    agent_id varchar(255),
+    payee_id varchar(255) not null,
+    payer_agent_id varchar(255),
+    routing_nbr varchar(255),
+    wallet_id varchar(255),
+    primary key (payee_id)
+);
+
+create table transaction (
+    status tinyint check (status between 0 and 3),
+    amount bigint not null,
+    journal_sequence bigint generated always as identity,
+    timestamp timestamp(6),
+    type varchar(31) not null,
+    currency varchar(255),
+    idempotency_key varchar(255),
+    payee_id varchar(255),
+    payer_description varchar(255),
+    transaction_id varchar(255) not null,
+    wallet_id varchar(255),
+    primary key (transaction_id),
+    constraint transaction_wallet_idempotency_key_uk unique (wallet_id, idempotency_key)
+);
+
+create index transaction_wallet_journal_idx on transaction (wallet_id, journal_sequence);
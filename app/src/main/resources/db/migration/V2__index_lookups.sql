@@ -0,0 +1,4 @@
+-- The transactions of a wallet by time (listTransactions), the payees of a payer and the wallets of an agent
+create index transaction_wallet_timestamp_idx on transaction (wallet_id, timestamp);
+create index payee_payer_agent_idx on payee (payer_agent_id);
+create index wallet_agent_idx on wallet (agent_id);
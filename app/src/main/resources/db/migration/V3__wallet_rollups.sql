@@ -0,0 +1,12 @@
+-- Daily and monthly totals of the transactions of each wallet, see WalletRollups. Existing transactions are only rolled
+-- up by a rebuild.
+create table wallet_rollup (
+    period tinyint not null check (period between 0 and 1),
+    period_start date not null,
+    closing_balance bigint not null,
+    total_in bigint not null,
+    total_out bigint not null,
+    transactions bigint not null,
+    wallet_id varchar(255) not null,
+    primary key (wallet_id, period, period_start)
+);
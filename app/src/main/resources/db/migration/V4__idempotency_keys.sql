@@ -0,0 +1,11 @@
+-- The Idempotency-Keys of withdrawals, which outlive the withdrawals in the transaction table once they are archived
+create table idempotency_key (
+    timestamp timestamp(6),
+    idempotency_key varchar(255) not null,
+    transaction_id varchar(255),
+    wallet_id varchar(255) not null,
+    primary key (wallet_id, idempotency_key)
+);
+
+insert into idempotency_key (timestamp, idempotency_key, transaction_id, wallet_id)
+select timestamp, idempotency_key, transaction_id, wallet_id from transaction where idempotency_key is not null;
@@ -0,0 +1,71 @@
+package ai.agentza.archive;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackWhatWasWritten() throws IOException {
+        LocalDateTime month = LocalDateTime.of(2025, 3, 1, 0, 0);
+        List<ArchivedTransaction> transactions = List.of(
+                // Every optional column set
+                new ArchivedTransaction("tx-1-w", "WITHDRAWAL", month.plusNanos(123_456_000), "wallet-1", -2_500, "USD", 1, null, "payee-1", "key-1", 42),
+                // Every optional column null, and the journal sequence going back
+                new ArchivedTransaction("tx-2-d", "DEPOSIT", month.plusDays(3), "wallet-1", 2_500, null, 0, null, null, null, 7),
+                // Same timestamp as the row before, and extreme amounts and sequences
+                new ArchivedTransaction("tx-3-d", "DEPOSIT", month.plusDays(3), "wallet-1", Long.MAX_VALUE, "EUR", 2, "Agent 1", null, null, Long.MAX_VALUE),
+                new ArchivedTransaction("tx-4-w", "WITHDRAWAL", month.plusDays(30).plusHours(23), "wallet-1", Long.MIN_VALUE, "EUR", 1, null, "payee-2", "key-é", -1)
+        );
+        Path path = dir.resolve("wallet-1").resolve("2025-03.seg");
+
+        Segments.write(path, "wallet-1", transactions);
+
+        assertEquals(transactions, Segments.read(path));
+        assertFalse(Files.exists(path.resolveSibling("2025-03.seg.tmp")));
+    }
+
+    @Test
+    void readsBackEmptySegment() throws IOException {
+        Path path = dir.resolve("2025-03.seg");
+
+        Segments.write(path, "wallet-1", List.of());
+
+        assertTrue(Segments.read(path).isEmpty());
+    }
+
+    @Test
+    void rewritesSegmentAsAWhole() throws IOException {
+        LocalDateTime timestamp = LocalDateTime.of(2025, 3, 1, 12, 0);
+        ArchivedTransaction first = new ArchivedTransaction("tx-1-w", "WITHDRAWAL", timestamp, "wallet-1", -1, "USD", 1, null, "payee-1", null, 1);
+        ArchivedTransaction second = new ArchivedTransaction("tx-2-w", "WITHDRAWAL", timestamp.plusSeconds(1), "wallet-1", -2, "USD", 1, null, "payee-1", null, 2);
+        Path path = dir.resolve("2025-03.seg");
+
+        Segments.write(path, "wallet-1", List.of(first));
+        Segments.write(path, "wallet-1", List.of(first, second));
+
+        assertEquals(List.of(first, second), Segments.read(path));
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        Path path = dir.resolve("2025-03.seg");
+        Files.write(path, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+
+        assertThrows(IOException.class, () -> Segments.read(path));
+    }
+}
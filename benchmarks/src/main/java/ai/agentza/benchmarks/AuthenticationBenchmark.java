@@ -0,0 +1,68 @@
+package ai.agentza.benchmarks;
+
+import ai.agentza.model.ApiKey;
+import ai.agentza.model.ApiKeyRepository;
+import ai.agentza.security.ApiKeyAuthenticationService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.BadCredentialsException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Cost of authenticating a request by its API key. Run with -t to vary the number of concurrent requests.
+//   KNOWN:   keys that exist, picked uniformly out of `keys`
+//   UNKNOWN: keys that don't exist, picked uniformly out of `keys`
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class AuthenticationBenchmark {
+
+    public enum Keys { KNOWN, UNKNOWN }
+
+    @Param({"KNOWN", "UNKNOWN"})
+    public Keys lookup;
+
+    @Param({"1000"})
+    public int keys;
+
+    private ConfigurableApplicationContext context;
+    private ApiKeyAuthenticationService authenticationService;
+    private MockHttpServletRequest[] requests;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = Benchmarks.startServer();
+        authenticationService = context.getBean(ApiKeyAuthenticationService.class);
+
+        List<ApiKey> created = new ArrayList<>(keys);
+        requests = new MockHttpServletRequest[keys];
+        for (int i = 0; i < keys; i++) {
+            created.add(new ApiKey("bench-key-" + i, "bench"));
+            requests[i] = new MockHttpServletRequest();
+            requests[i].addHeader("X-API-KEY", (lookup == Keys.KNOWN ? "bench-key-" : "bench-unknown-key-") + i);
+        }
+        context.getBean(ApiKeyRepository.class).saveAll(created);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object authenticate() {
+        MockHttpServletRequest request = requests[ThreadLocalRandom.current().nextInt(requests.length)];
+        try {
+            return authenticationService.getApiKeyAuthentication(request);
+        } catch (BadCredentialsException e) {
+            return e;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package ai.agentza.benchmarks;
+
+import ai.agentza.Agentza;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+final class Benchmarks {
+
+    private Benchmarks() {}
+
+    // Starts agentza-server without the web layer against its own in-memory H2 database, unless a datasource URL is given.
+    static ConfigurableApplicationContext startServer(String... args) {
+        return start(WebApplicationType.NONE, args);
+    }
+
+    // Starts agentza-server on a random port against its own in-memory H2 database. The port is in local.server.port.
+    static ConfigurableApplicationContext startWebServer(String... args) {
+        String[] all = new String[args.length + 1];
+        all[0] = "--server.port=0";
+        System.arraycopy(args, 0, all, 1, args.length);
+        return start(WebApplicationType.SERVLET, all);
+    }
+
+    private static ConfigurableApplicationContext start(WebApplicationType type, String... args) {
+        // Unless the arguments choose a database of their own
+        boolean database = Arrays.stream(args).anyMatch(arg -> arg.startsWith("--spring.datasource.url="));
+        String[] defaults = database ? new String[]{"--logging.level.root=WARN"} : new String[]{
+                "--spring.datasource.url=jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                "--logging.level.root=WARN",
+        };
+        String[] all = new String[defaults.length + args.length];
+        System.arraycopy(defaults, 0, all, 0, defaults.length);
+        System.arraycopy(args, 0, all, defaults.length, args.length);
+        return new SpringApplicationBuilder(Agentza.class)
+                .web(type)
+                .run(all);
+    }
+}
@@ -0,0 +1,75 @@
+package ai.agentza.benchmarks;
+
+import ai.agentza.model.Agent;
+import ai.agentza.model.AgentRepository;
+import ai.agentza.model.Wallet;
+import ai.agentza.model.WalletRepository;
+import ai.agentza.model.payees.AgentPayee;
+import ai.agentza.model.payees.PayeeRepository;
+import ai.agentza.rest.TransactionController;
+import ai.agentza.rest.TransactionController.TransactionRequest;
+import ai.agentza.rest.TransactionController.TransactionResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// A full createTransaction, as the controller runs it: payer, wallet and payee lookups, the transfer through the
+// PaymentEngine and its persistence. Each agent pays the next one, so run with -t to vary the number of concurrent payers.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class CreateTransactionBenchmark {
+
+    @Param({"100"})
+    public int agents;
+
+    private ConfigurableApplicationContext context;
+    private TransactionController transactionController;
+    private Payer[] payers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = Benchmarks.startServer();
+        transactionController = context.getBean(TransactionController.class);
+        AgentRepository agentRepository = context.getBean(AgentRepository.class);
+        WalletRepository walletRepository = context.getBean(WalletRepository.class);
+        PayeeRepository payeeRepository = context.getBean(PayeeRepository.class);
+
+        List<Agent> createdAgents = new ArrayList<>(agents);
+        List<Wallet> createdWallets = new ArrayList<>(agents);
+        for (int i = 0; i < agents; i++) {
+            createdAgents.add(new Agent("bench-agent-" + i, "Benchmark agent " + i, "bench-wallet-" + i));
+            createdWallets.add(new Wallet("bench-wallet-" + i, "bench-agent-" + i, "Benchmark wallet " + i, "USD", 100_000_000_000L));
+        }
+        agentRepository.saveAll(createdAgents);
+        walletRepository.saveAll(createdWallets);
+
+        payers = new Payer[agents];
+        for (int i = 0; i < agents; i++) {
+            String agentId = "bench-agent-" + i;
+            AgentPayee payee = payeeRepository.save(new AgentPayee(agentId, "bench-agent-" + (i + 1) % agents));
+            payers[i] = new Payer(() -> agentId, "bench-wallet-" + i, new TransactionRequest(payee.getPayeeId(), 100));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public TransactionResponse createTransaction() {
+        Payer payer = payers[ThreadLocalRandom.current().nextInt(payers.length)];
+        return transactionController.createTransaction(payer.walletId(), payer.request(), null, payer.principal());
+    }
+
+    private record Payer(Principal principal, String walletId, TransactionRequest request) {}
+}
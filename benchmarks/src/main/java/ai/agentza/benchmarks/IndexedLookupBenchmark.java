@@ -0,0 +1,120 @@
+package ai.agentza.benchmarks;
+
+import ai.agentza.model.Wallet;
+import ai.agentza.model.WalletRepository;
+import ai.agentza.model.payees.Payee;
+import ai.agentza.model.payees.PayeeRepository;
+import ai.agentza.model.transactions.Transaction;
+import ai.agentza.model.transactions.TransactionRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// The hot lookups of the server in the durable database of the prod profile, holding `rows` transactions spread over
+// rows / 1000 wallets of as many agents, and rows / 100 payees. With `indexed` false, the secondary indexes of the
+// migrations are dropped, leaving only the primary keys.
+//   transactions: the first page of the transactions of a wallet in a time range
+//   payees:       the payees of an agent
+//   wallets:      the wallets of an agent
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+public class IndexedLookupBenchmark {
+
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+    private static final Sort PAGE_ORDER = Sort.by("timestamp", "transactionId");
+    private static final int LOAD_CHUNK = 100_000;
+
+    @Param({"10000000"})
+    public int rows;
+
+    @Param({"true", "false"})
+    public boolean indexed;
+
+    private Path dataDir;
+    private ConfigurableApplicationContext context;
+    private TransactionRepository transactionRepository;
+    private PayeeRepository payeeRepository;
+    private WalletRepository walletRepository;
+    private int wallets;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("agentza-bench");
+        context = Benchmarks.startServer(
+                "--spring.profiles.active=prod",
+                "--spring.datasource.url=jdbc:h2:file:" + dataDir.resolve("agentza") + ";DB_CLOSE_ON_EXIT=FALSE;QUERY_CACHE_SIZE=64"
+        );
+        transactionRepository = context.getBean(TransactionRepository.class);
+        payeeRepository = context.getBean(PayeeRepository.class);
+        walletRepository = context.getBean(WalletRepository.class);
+        wallets = Math.max(1, rows / 1000);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        if (!indexed) {
+            jdbcTemplate.execute("drop index transaction_wallet_timestamp_idx");
+            jdbcTemplate.execute("drop index transaction_wallet_journal_idx");
+            jdbcTemplate.execute("alter table transaction drop constraint transaction_wallet_idempotency_key_uk");
+            jdbcTemplate.execute("drop index payee_payer_agent_idx");
+            jdbcTemplate.execute("drop index wallet_agent_idx");
+        }
+        jdbcTemplate.update("""
+                insert into wallet (wallet_id, agent_id, description, currency, balance, stripes)
+                select 'wallet-' || x, 'agent-' || x, 'Benchmark wallet', 'USD', 0, 1 from system_range(0, ?)
+                """, wallets - 1);
+        jdbcTemplate.update("""
+                insert into payee (type, payee_id, payer_agent_id, agent_id)
+                select 'AGENT', 'payee-' || x, 'agent-' || mod(x, ?), 'agent-' || mod(x + 1, ?) from system_range(0, ?)
+                """, wallets, wallets, rows / 100 - 1);
+        // Consecutive transactions go to different wallets, one second apart. Their ids are sequential rather than random
+        // UUIDs only to keep loading 10M rows short.
+        for (int from = 0; from < rows; from += LOAD_CHUNK) {
+            jdbcTemplate.update("""
+                    insert into transaction (transaction_id, type, timestamp, wallet_id, amount, currency, status, payer_description)
+                    select 'tx-' || lpad(x, 12, '0'), 'DEPOSIT', dateadd(second, x, timestamp '2025-01-01 00:00:00'), 'wallet-' || mod(x, ?), 100, 'USD', 1, 'payer'
+                    from system_range(?, ?)
+                    """, wallets, from, Math.min(rows, from + LOAD_CHUNK) - 1);
+        }
+        jdbcTemplate.execute("analyze");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        FileSystemUtils.deleteRecursively(dataDir);
+    }
+
+    @Benchmark
+    public Window<Transaction> transactions() {
+        String walletId = "wallet-" + ThreadLocalRandom.current().nextInt(wallets);
+        // A day in the middle of the history
+        LocalDateTime from = START.plusSeconds(rows / 2);
+        return transactionRepository.findByWalletIdAndTimestampBetween(walletId, from, from.plusDays(1), ScrollPosition.keyset(), Limit.of(100), PAGE_ORDER);
+    }
+
+    @Benchmark
+    public List<Payee> payees() {
+        return payeeRepository.findByPayerAgentId("agent-" + ThreadLocalRandom.current().nextInt(wallets));
+    }
+
+    @Benchmark
+    public List<Wallet> wallets() {
+        return walletRepository.findByAgentId("agent-" + ThreadLocalRandom.current().nextInt(wallets));
+    }
+}
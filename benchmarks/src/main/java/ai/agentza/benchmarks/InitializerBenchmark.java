@@ -0,0 +1,46 @@
+package ai.agentza.benchmarks;
+
+import ai.agentza.model.Initializer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+// Seeding an empty database with the Initializer, as done when the server starts.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class InitializerBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private Initializer initializer;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = Benchmarks.startServer();
+        initializer = context.getBean(Initializer.class);
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+    }
+
+    @Setup(Level.Invocation)
+    public void clear() {
+        for (String table : new String[]{"payee", "api_key", "wallet", "agent"}) {
+            jdbcTemplate.update("delete from " + table);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void seed() {
+        initializer.populatePayees();
+    }
+}
@@ -0,0 +1,100 @@
+package ai.agentza.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.agentza.microledger.model.Block;
+import io.agentza.microledger.model.ControllingIdentifier;
+import io.agentza.microledger.model.Seal;
+import io.agentza.microledger.model.Signature;
+import io.agentza.microledger.storage.InMemoryLedgerStore;
+import io.agentza.microledger.storage.LedgerStore;
+import io.agentza.microledger.storage.SegmentLedgerStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Appending a microledger block with one custodian, and fetching a random block by its number out of 10k, in memory and
+// in memory-mapped segment files with each fsync policy. The segment files go to a new temporary folder for every
+// iteration, which must be on a real disk for the fsync policies to make a difference.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class LedgerStoreBenchmark {
+
+    private static final String LEDGER_ID = "benchmark";
+    private static final int BLOCKS = 10_000;
+
+    @Param({"memory", "BLOCK", "BATCH", "PERIODIC"})
+    public String store;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final SplittableRandom random = new SplittableRandom(42);
+    private Block block;
+    private Path dir;
+    private LedgerStore ledgerStore;
+
+    @Setup(Level.Trial)
+    public void setUpBlock() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        String pem = "-----BEGIN PUBLIC KEY-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(generator.generateKeyPair().getPublic().getEncoded())
+                + "\n-----END PUBLIC KEY-----\n";
+        block = new Block();
+        block.setPreviousBlockHash("9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08");
+        block.setDigitalFingerprint("60303ae22b998861bce3b28f33eec1be758a213c86c93c076dbe9f558c11c752");
+        block.setControllingIdentifiers(List.of(new ControllingIdentifier("RSA", "custodian", pem)));
+        block.setSeals(List.of(new Seal("SHA-256", "abcd1234")));
+        block.setSignatures(List.of(new Signature("RSA", Base64.getEncoder().encodeToString(new byte[256]), "custodian")));
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpStore() throws IOException {
+        if (store.equals("memory")) {
+            ledgerStore = new InMemoryLedgerStore();
+        } else {
+            dir = Files.createTempDirectory("microledger-store");
+            ledgerStore = new SegmentLedgerStore(dir, 64 << 20, SegmentLedgerStore.FsyncPolicy.valueOf(store), 100, Duration.ofSeconds(1), objectMapper);
+        }
+        ledgerStore.createLedger(LEDGER_ID);
+        for (int i = 0; i < BLOCKS; i++) {
+            append();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownStore() throws IOException {
+        if (ledgerStore instanceof SegmentLedgerStore segmentLedgerStore) {
+            segmentLedgerStore.close();
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public int append() {
+        block.setBlockNumber(ledgerStore.size(LEDGER_ID) + 1);
+        ledgerStore.append(LEDGER_ID, block);
+        return ledgerStore.size(LEDGER_ID);
+    }
+
+    @Benchmark
+    public Block getBlock() {
+        return ledgerStore.getBlock(LEDGER_ID, 1 + random.nextInt(BLOCKS));
+    }
+}
@@ -0,0 +1,104 @@
+package ai.agentza.benchmarks;
+
+import ai.agentza.model.Wallet;
+import ai.agentza.model.WalletRepository;
+import ai.agentza.rest.TransactionController;
+import ai.agentza.rest.TransactionController.TransactionResponse;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.Principal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Listing the transactions of a wallet holding `rows` transactions:
+//   firstPage:  the first page of the history
+//   middlePage: a page in the middle of the history, reached with a cursor
+//   stream:     the whole history as newline-delimited JSON
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ListTransactionsBenchmark {
+
+    private static final String WALLET_ID = "bench-wallet";
+    private static final Principal PRINCIPAL = () -> "bench";
+    private static final LocalDateTime START = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @Param({"1000", "100000"})
+    public int rows;
+
+    @Param({"100"})
+    public int pageSize;
+
+    private ConfigurableApplicationContext context;
+    private TransactionController transactionController;
+    private String middleCursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = Benchmarks.startServer();
+        transactionController = context.getBean(TransactionController.class);
+        context.getBean(WalletRepository.class).save(new Wallet(WALLET_ID, "bench", "Benchmark wallet", "USD", 0));
+
+        List<Object[]> batch = new ArrayList<>();
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        for (int i = 0; i < rows; i++) {
+            batch.add(new Object[]{UUID.randomUUID().toString(), Timestamp.valueOf(START.plusSeconds(i)), WALLET_ID, 100, "payer " + i});
+            if (batch.size() == 10_000 || i == rows - 1) {
+                jdbcTemplate.batchUpdate("insert into transaction (transaction_id, type, timestamp, wallet_id, amount, currency, status, payer_description) values (?, 'DEPOSIT', ?, ?, ?, 'USD', 1, ?)", batch);
+                batch.clear();
+            }
+        }
+
+        // The cursor of the page just before the middle of the history
+        var page = transactionController.listTransactions(WALLET_ID, pageSize, null, null, START.plusSeconds(rows / 2 - pageSize), null, PRINCIPAL);
+        middleCursor = page.getHeaders().getFirst(TransactionController.NEXT_CURSOR_HEADER);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public ResponseEntity<List<TransactionResponse>> firstPage() {
+        return transactionController.listTransactions(WALLET_ID, pageSize, null, null, null, null, PRINCIPAL);
+    }
+
+    @Benchmark
+    public ResponseEntity<List<TransactionResponse>> middlePage() {
+        return transactionController.listTransactions(WALLET_ID, pageSize, middleCursor, null, null, null, PRINCIPAL);
+    }
+
+    @Benchmark
+    public long stream() throws IOException {
+        var counter = new CountingOutputStream();
+        transactionController.streamTransactions(WALLET_ID, null, null, PRINCIPAL).getBody().writeTo(counter);
+        return counter.count;
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
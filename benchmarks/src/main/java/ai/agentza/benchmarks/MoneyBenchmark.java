@@ -0,0 +1,50 @@
+package ai.agentza.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// The balance check and update done for every transfer, with the boxed Double balances the wallets used to have and with
+// the long minor units they have now. Run with -prof gc to see the allocation rate of each.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class MoneyBenchmark {
+
+    private Double boxedBalance;
+    private Double boxedAmount;
+
+    private long balance;
+    private long amount;
+
+    @Setup
+    public void setUp() {
+        boxedBalance = 1_000_000.0;
+        boxedAmount = 0.01;
+        balance = 100_000_000L;
+        amount = 1;
+    }
+
+    @Benchmark
+    public Double boxedDouble() {
+        if (boxedBalance < boxedAmount) {
+            throw new IllegalStateException("Insufficient funds");
+        }
+        boxedBalance = boxedBalance - boxedAmount;
+        boxedBalance = boxedBalance + boxedAmount;
+        return boxedBalance;
+    }
+
+    @Benchmark
+    public long primitiveLong() {
+        if (balance < amount) {
+            throw new IllegalStateException("Insufficient funds");
+        }
+        balance -= amount;
+        balance += amount;
+        return balance;
+    }
+}
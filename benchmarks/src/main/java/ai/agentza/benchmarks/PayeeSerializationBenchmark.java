@@ -0,0 +1,66 @@
+package ai.agentza.benchmarks;
+
+import ai.agentza.model.payees.AgentPayee;
+import ai.agentza.model.payees.Payee;
+import ai.agentza.model.payees.PayeeRepository;
+import ai.agentza.model.payees.USACHPayee;
+import ai.agentza.rest.PayeeController;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Rendering the payees of an agent as JSON, half of them agent payees and half US ACH payees:
+//   serialize:          the polymorphic Payee.List only, with the ObjectMapper of the server
+//   listAndSerialize:   loading the payees through the PayeeController as well
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PayeeSerializationBenchmark {
+
+    private static final Principal PRINCIPAL = () -> "bench";
+
+    @Param({"10", "1000"})
+    public int payees;
+
+    private ConfigurableApplicationContext context;
+    private ObjectMapper objectMapper;
+    private PayeeController payeeController;
+    private Payee.List list;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = Benchmarks.startServer();
+        objectMapper = context.getBean(ObjectMapper.class);
+        payeeController = context.getBean(PayeeController.class);
+
+        List<Payee> created = new ArrayList<>(payees);
+        for (int i = 0; i < payees; i++) {
+            created.add(i % 2 == 0 ? new AgentPayee("bench", "bench-agent-" + i) : new USACHPayee("bench", "021000021", String.valueOf(100_000 + i)));
+        }
+        list = new Payee.List(context.getBean(PayeeRepository.class).saveAll(created));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(list);
+    }
+
+    @Benchmark
+    public byte[] listAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(payeeController.listPayees(PRINCIPAL));
+    }
+}
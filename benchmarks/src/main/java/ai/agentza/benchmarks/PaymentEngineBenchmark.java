@@ -0,0 +1,63 @@
+package ai.agentza.benchmarks;
+
+import ai.agentza.model.Wallet;
+import ai.agentza.model.WalletRepository;
+import ai.agentza.payments.PaymentEngine;
+import ai.agentza.payments.Transfer;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Transfers/sec through the PaymentEngine, including persistence. Run with -t to vary the number of concurrent payers.
+//   HOT:     every transfer pays into the same wallet (a merchant receiving from many agents)
+//   UNIFORM: source and target are picked uniformly across all wallets
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class PaymentEngineBenchmark {
+
+    public enum Distribution { HOT, UNIFORM }
+
+    @Param({"HOT", "UNIFORM"})
+    public Distribution distribution;
+
+    @Param({"1000"})
+    public int wallets;
+
+    private ConfigurableApplicationContext context;
+    private PaymentEngine paymentEngine;
+    private Wallet[] pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = Benchmarks.startServer();
+        paymentEngine = context.getBean(PaymentEngine.class);
+
+        List<Wallet> created = new ArrayList<>(wallets);
+        for (int i = 0; i < wallets; i++) {
+            created.add(new Wallet("bench-wallet-" + i, "bench", "Benchmark wallet " + i, "USD", 100_000_000_000L));
+        }
+        context.getBean(WalletRepository.class).saveAll(created);
+        pool = created.toArray(Wallet[]::new);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Transfer transfer() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Wallet source = pool[1 + random.nextInt(pool.length - 1)];
+        Wallet target = distribution == Distribution.HOT ? pool[0] : pool[random.nextInt(pool.length)];
+        return paymentEngine.transfer(source, target, 100, "benchmark", "bench-payee").join();
+    }
+}
@@ -0,0 +1,109 @@
+package ai.agentza.benchmarks;
+
+import ai.agentza.model.Agent;
+import ai.agentza.model.AgentRepository;
+import ai.agentza.model.ApiKey;
+import ai.agentza.model.ApiKeyRepository;
+import ai.agentza.model.Wallet;
+import ai.agentza.model.WalletRepository;
+import ai.agentza.model.payees.AgentPayee;
+import ai.agentza.model.payees.PayeeRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Requests/sec through the HTTP server, with requests served by the bounded pool of platform threads of Tomcat or by
+// virtual threads. Both requests spend most of their time waiting: createTransaction on the group commit of the
+// TransferWriter, listTransactions on the database. Run with a high -t, above the size of the Tomcat pool (200 threads by
+// default), to compare the two modes under load, e.g. -t 1000.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ServerThreadingBenchmark {
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    @Param({"100"})
+    public int agents;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private Payer[] payers;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = Benchmarks.startWebServer("--spring.threads.virtual.enabled=" + virtualThreads);
+        String baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/v1/wallets/";
+        client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+
+        List<Agent> createdAgents = new ArrayList<>(agents);
+        List<Wallet> createdWallets = new ArrayList<>(agents);
+        List<ApiKey> createdKeys = new ArrayList<>(agents);
+        for (int i = 0; i < agents; i++) {
+            createdAgents.add(new Agent("bench-agent-" + i, "Benchmark agent " + i, "bench-wallet-" + i));
+            createdWallets.add(new Wallet("bench-wallet-" + i, "bench-agent-" + i, "Benchmark wallet " + i, "USD", 100_000_000_000L));
+            createdKeys.add(new ApiKey("bench-key-" + i, "bench-agent-" + i));
+        }
+        context.getBean(AgentRepository.class).saveAll(createdAgents);
+        context.getBean(WalletRepository.class).saveAll(createdWallets);
+        context.getBean(ApiKeyRepository.class).saveAll(createdKeys);
+
+        PayeeRepository payeeRepository = context.getBean(PayeeRepository.class);
+        payers = new Payer[agents];
+        for (int i = 0; i < agents; i++) {
+            AgentPayee payee = payeeRepository.save(new AgentPayee("bench-agent-" + i, "bench-agent-" + (i + 1) % agents));
+            URI transactions = URI.create(baseUrl + "bench-wallet-" + i + "/transactions");
+            payers[i] = new Payer(
+                    HttpRequest.newBuilder(transactions)
+                            .header("X-API-KEY", "bench-key-" + i)
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString("{\"payeeId\": \"" + payee.getPayeeId() + "\", \"amount\": 1}"))
+                            .build(),
+                    HttpRequest.newBuilder(URI.create(transactions + "?limit=20"))
+                            .header("X-API-KEY", "bench-key-" + i)
+                            .GET()
+                            .build()
+            );
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+        context.close();
+    }
+
+    @Benchmark
+    public int createTransaction() throws IOException, InterruptedException {
+        return send(payers[ThreadLocalRandom.current().nextInt(payers.length)].createTransaction());
+    }
+
+    @Benchmark
+    public int listTransactions() throws IOException, InterruptedException {
+        return send(payers[ThreadLocalRandom.current().nextInt(payers.length)].listTransactions());
+    }
+
+    private int send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(request.method() + " " + request.uri() + " returned " + response.statusCode());
+        }
+        return response.statusCode();
+    }
+
+    private record Payer(HttpRequest createTransaction, HttpRequest listTransactions) {}
+}
@@ -0,0 +1,82 @@
+package ai.agentza.benchmarks;
+
+import io.agentza.microledger.model.Block;
+import io.agentza.microledger.model.ControllingIdentifier;
+import io.agentza.microledger.model.Signature;
+import io.agentza.microledger.service.LedgerService;
+import io.agentza.microledger.storage.InMemoryLedgerStore;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Verifying the signatures of a microledger block, as LedgerService does for every block it adds or re-verifies. Each of
+// the block's controlling identifiers has a 2048-bit RSA key in PEM and signs it, and the block requires all of them
+// (n-of-n). Without key ids, each signature is tried against the identifiers in turn until one verifies it; with them,
+// only against the identifier that made it. The same custodian keys sign block after block.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SignatureVerificationBenchmark {
+
+    @Param({"1", "5"})
+    public int identifiers;
+
+    @Param({"false", "true"})
+    public boolean keyIds;
+
+    private LedgerService ledgerService;
+    private Block block;
+
+    @Setup
+    public void setUp() throws Exception {
+        ledgerService = new LedgerService(new InMemoryLedgerStore(), 10_000);
+
+        block = new Block();
+        block.setBlockNumber(1);
+        block.setThreshold(identifiers);
+        String fingerprint = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(block.toString().getBytes(StandardCharsets.UTF_8)));
+        block.setDigitalFingerprint(fingerprint);
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        List<ControllingIdentifier> controllingIdentifiers = new ArrayList<>();
+        List<Signature> signatures = new ArrayList<>();
+        for (int i = 0; i < identifiers; i++) {
+            KeyPair custodian = generator.generateKeyPair();
+            controllingIdentifiers.add(new ControllingIdentifier("RSA", "custodian-" + i, pem(custodian)));
+            java.security.Signature signature = java.security.Signature.getInstance("SHA256withRSA");
+            signature.initSign(custodian.getPrivate());
+            signature.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+            signatures.add(new Signature("RSA", Base64.getEncoder().encodeToString(signature.sign()), keyIds ? "custodian-" + i : null));
+        }
+        block.setControllingIdentifiers(controllingIdentifiers);
+        block.setSignatures(signatures);
+
+        String failure = ledgerService.checkSignatures(block);
+        if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+    }
+
+    @Benchmark
+    public String verifySignatures() {
+        return ledgerService.checkSignatures(block);
+    }
+
+    private static String pem(KeyPair keyPair) {
+        return "-----BEGIN PUBLIC KEY-----\n"
+                + Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII)).encodeToString(keyPair.getPublic().getEncoded())
+                + "\n-----END PUBLIC KEY-----\n";
+    }
+}
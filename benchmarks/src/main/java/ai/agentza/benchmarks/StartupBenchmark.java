@@ -0,0 +1,115 @@
+package ai.agentza.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Time from launching a new agentza-server process to the response to its first API request, which includes seeding the
+// database, for:
+//   default:    the executable jar, with the default profile
+//   prod:       the executable jar, with the prod profile (no springdoc, database in files)
+//   fast-start: the fast-start build of the prod profile, with Spring AOT and an AppCDS archive
+// Every invocation starts a new JVM with a new database. Needs the fast-start build: (cd ../app && mvn -Pfast-start package)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+public class StartupBenchmark {
+
+    private static final Path TARGET = Path.of("../app/target");
+    private static final String JAR = "agentza-server-0.0.1-SNAPSHOT-exec.jar";
+    private static final long TIMEOUT_NANOS = TimeUnit.MINUTES.toNanos(2);
+
+    @Param({"default", "prod", "fast-start"})
+    public String build;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private Path dataDir;
+    private Path log;
+    private List<String> command;
+    private HttpRequest request;
+    private Process process;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws IOException {
+        dataDir = Files.createTempDirectory("agentza-startup");
+        log = dataDir.resolve("server.log");
+        int port = freePort();
+
+        command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command().orElse("java"));
+        switch (build) {
+            case "default", "prod" -> command.addAll(List.of("-jar", TARGET.resolve(JAR).toString()));
+            case "fast-start" -> command.addAll(List.of(
+                    "-XX:SharedArchiveFile=" + TARGET.resolve("fast-start/agentza-server.jsa"),
+                    "-Dspring.aot.enabled=true",
+                    "-jar", TARGET.resolve("fast-start").resolve(JAR).toString()
+            ));
+            default -> throw new IllegalArgumentException(build);
+        }
+        if (!build.equals("default")) {
+            command.addAll(List.of("--spring.profiles.active=prod", "--agentza.data-dir=" + dataDir));
+        }
+        command.addAll(List.of(
+                "--server.port=" + port,
+                "--management.server.port=" + freePort(),
+                // Requests sent before the Initializer seeded the API keys are rejected, don't remember that
+                "--agentza.auth.cache.negative-ttl=0s"
+        ));
+        request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/wallets/"))
+                .header("X-API-KEY", "agent-foo-key")
+                .GET()
+                .build();
+    }
+
+    @Benchmark
+    public int firstRequest() throws IOException, InterruptedException {
+        process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log.toFile()).start();
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < TIMEOUT_NANOS) {
+            if (!process.isAlive()) {
+                throw new IllegalStateException("agentza-server exited, see " + log);
+            }
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() == 200) {
+                    return response.statusCode();
+                }
+            } catch (ConnectException e) {
+                // Not listening yet
+            }
+            Thread.sleep(5);
+        }
+        throw new IllegalStateException("agentza-server didn't serve a request in time, see " + log);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() throws IOException, InterruptedException {
+        process.destroy();
+        process.waitFor();
+        try (Stream<Path> files = Files.walk(dataDir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (var socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package ai.agentza.benchmarks;
+
+import ai.agentza.model.Wallet;
+import ai.agentza.model.WalletRepository;
+import ai.agentza.payments.PaymentEngine;
+import ai.agentza.payments.TransactionFeed;
+import ai.agentza.payments.Transfer;
+import ai.agentza.payments.TransferWriter;
+import ai.agentza.payments.WalletBalances;
+import ai.agentza.payments.WalletRollups;
+import ai.agentza.payments.WalletStriping;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Credits/sec into a single hot wallet as its number of stripes grows. Run with -t to vary the number of concurrent payers.
+// Persistence is left out, so that the benchmark measures the contention on the wallet in the payment lanes rather than
+// the throughput of the database.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class StripedWalletBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int stripes;
+
+    @Param({"1000"})
+    public int payers;
+
+    private ConfigurableApplicationContext context;
+    private PaymentEngine paymentEngine;
+    private Wallet merchant;
+    private Wallet[] pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = Benchmarks.startServer();
+        WalletRepository walletRepository = context.getBean(WalletRepository.class);
+
+        List<Wallet> created = new ArrayList<>(payers);
+        for (int i = 0; i < payers; i++) {
+            created.add(new Wallet("bench-payer-" + i, "bench", "Benchmark payer " + i, "USD", 100_000_000_000L));
+        }
+        walletRepository.saveAll(created);
+        pool = created.toArray(Wallet[]::new);
+
+        walletRepository.save(new Wallet("bench-merchant", "bench", "Benchmark merchant", "USD", 0));
+        context.getBean(WalletStriping.class).stripe(walletRepository.findById("bench-merchant").orElseThrow(), stripes);
+        merchant = walletRepository.findById("bench-merchant").orElseThrow();
+
+        paymentEngine = new PaymentEngine(context.getBean(WalletBalances.class), new DiscardingTransferWriter(context), 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        paymentEngine.shutdown();
+        context.close();
+    }
+
+    @Benchmark
+    public Transfer credit() {
+        Wallet source = pool[ThreadLocalRandom.current().nextInt(pool.length)];
+        return paymentEngine.transfer(source, merchant, 100, "benchmark", "bench-payee").join();
+    }
+
+    private static class DiscardingTransferWriter extends TransferWriter {
+        DiscardingTransferWriter(ConfigurableApplicationContext context) {
+            super(context.getBean(TransactionTemplate.class), context.getBean(JdbcTemplate.class), context.getBean(TransactionFeed.class), context.getBean(WalletRollups.class), context.getBean(WalletBalances.class), 1, 0);
+        }
+
+        @Override
+        public CompletableFuture<Void> write(List<Transfer> transfers) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+}
@@ -65,7 +65,25 @@ and sends it to /api/ledger/{ledgerId}/blocks.`,
 		// We'll do the "final" canonical representation in the signBlockFingerprint function
 		// which also includes blockNumber, previousBlockHash, timeImprint, etc.
 
-		// 5. Create controlling identifier with our public key in PEM
+		// 5. Create controlling identifier with our public key in PEM.
+		// It is part of the canonical representation, so it must be set before the fingerprint is computed.
+		privKey, err := LoadOrGenerateRSAKey()
+		if err != nil {
+			log.Fatalf("Error loading/generating RSA key: %v", err)
+		}
+
+		pubPEM, err := getPublicKeyPEM(&privKey.PublicKey)
+		if err != nil {
+			log.Fatalf("Error encoding public key: %v", err)
+		}
+
+		newBlock.ControllingIdentifiers = []model.ControllingIdentifier{
+			{
+				IdentifierType:  "RSA",
+				IdentifierValue: "ExampleRSACustodian",
+				PublicKey:       pubPEM, // So the server can verify signature
+			},
+		}
 
 		// Maybe we include a sample seal for demonstration
 		newBlock.Seals = []model.Seal{
@@ -89,11 +107,6 @@ and sends it to /api/ledger/{ledgerId}/blocks.`,
 		}
 		newBlock.DigitalFingerprint = &localFingerprint
 
-		privKey, err := LoadOrGenerateRSAKey()
-		if err != nil {
-			log.Fatalf("Error loading/generating RSA key: %v", err)
-		}
-
 		sigValue, err := signBlockFingerprint(privKey, localFingerprint)
 		if err != nil {
 			log.Fatalf("Error signing block: %v", err)
@@ -104,19 +117,7 @@ and sends it to /api/ledger/{ledgerId}/blocks.`,
 			{
 				Algorithm: "RSA", // The server maps "RSA" -> "SHA256withRSA"
 				Value:     sigValue,
-			},
-		}
-
-		pubPEM, err := getPublicKeyPEM(&privKey.PublicKey)
-		if err != nil {
-			log.Fatalf("Error encoding public key: %v", err)
-		}
-
-		newBlock.ControllingIdentifiers = []model.ControllingIdentifier{
-			{
-				IdentifierType:  "RSA",
-				IdentifierValue: "ExampleRSACustodian",
-				PublicKey:       pubPEM, // So the server can verify signature
+				KeyID:     "ExampleRSACustodian", // Only checked against the controlling identifier of that name
 			},
 		}
 
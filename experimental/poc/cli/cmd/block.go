@@ -8,17 +8,55 @@ import (
 	"agentza.io/example/model"
 )
 
+// Escapes the quotes and backslashes in string values, the only characters that could be mistaken for the structure
+var canonicalEscaper = strings.NewReplacer(`\`, `\\`, `"`, `\"`)
+
+// canonicalBlockString MUST match CanonicalBlockEncoder on the Java side: every field and every list element is followed
+// by a comma, missing strings are written as "", missing lists as [], and the threshold only when there is one.
+// The signatures are not part of it, as they sign the fingerprint of this representation.
 func canonicalBlockString(block *model.Block) string {
-	// Example only. Real code: do a canonical JSON, sorted keys, etc.
 	var sb strings.Builder
 	sb.WriteString("{")
 	sb.WriteString(fmt.Sprintf("\"blockNumber\":%d,", block.BlockNumber))
 	if block.PreviousBlockHash == nil {
 		sb.WriteString("\"previousBlockHash\":\"\",")
 	} else {
-		sb.WriteString(fmt.Sprintf("\"previousBlockHash\":\"%s\",", *block.PreviousBlockHash))
+		sb.WriteString(fmt.Sprintf("\"previousBlockHash\":\"%s\",", canonicalEscaper.Replace(*block.PreviousBlockHash)))
+	}
+	sb.WriteString(fmt.Sprintf("\"timeImprint\":\"%s\",", isoInstant(block.TimeImprint)))
+	if block.Threshold != nil {
+		sb.WriteString(fmt.Sprintf("\"threshold\":%d,", *block.Threshold))
+	}
+	sb.WriteString("\"controllingIdentifiers\":[")
+	for _, cid := range block.ControllingIdentifiers {
+		sb.WriteString(fmt.Sprintf("{\"identifierType\":\"%s\",\"identifierValue\":\"%s\",\"publicKey\":\"%s\",},",
+			canonicalEscaper.Replace(cid.IdentifierType), canonicalEscaper.Replace(cid.IdentifierValue), canonicalEscaper.Replace(cid.PublicKey)))
+	}
+	sb.WriteString("],")
+	sb.WriteString("\"seals\":[")
+	for _, seal := range block.Seals {
+		sb.WriteString(fmt.Sprintf("{\"sealType\":\"%s\",\"sealValue\":\"%s\",},",
+			canonicalEscaper.Replace(seal.SealType), canonicalEscaper.Replace(seal.SealValue)))
 	}
-	sb.WriteString(fmt.Sprintf("\"timeImprint\":\"%s\",", block.TimeImprint.Format(time.RFC3339Nano)))
+	sb.WriteString("],")
 	sb.WriteString("}")
 	return sb.String()
 }
+
+// isoInstant formats the time like Java's DateTimeFormatter.ISO_INSTANT, which writes the fraction of the second in
+// groups of three digits, where RFC3339Nano drops every trailing zero
+func isoInstant(t time.Time) string {
+	t = t.UTC()
+	s := t.Format("2006-01-02T15:04:05")
+	nanos := t.Nanosecond()
+	switch {
+	case nanos == 0:
+	case nanos%1_000_000 == 0:
+		s += fmt.Sprintf(".%03d", nanos/1_000_000)
+	case nanos%1_000 == 0:
+		s += fmt.Sprintf(".%06d", nanos/1_000)
+	default:
+		s += fmt.Sprintf(".%09d", nanos)
+	}
+	return s + "Z"
+}
@@ -13,6 +13,7 @@ type Block struct {
 	ControllingIdentifiers []ControllingIdentifier `json:"controllingIdentifiers,omitempty"`
 	Seals                  []Seal                  `json:"seals,omitempty"`
 	Signatures             []Signature             `json:"signatures,omitempty"`
+	Threshold              *int                    `json:"threshold,omitempty"` // distinct signers required (m-of-n)
 }
 
 type ControllingIdentifier struct {
@@ -28,5 +29,6 @@ type Seal struct {
 
 type Signature struct {
 	Algorithm string `json:"algorithm"`
-	Value     string `json:"value"` // base64 signature
+	Value     string `json:"value"`           // base64 signature
+	KeyID     string `json:"keyId,omitempty"` // identifierValue of the controlling identifier that signed
 }
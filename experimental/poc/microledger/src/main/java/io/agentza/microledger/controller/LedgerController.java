@@ -3,6 +3,7 @@ package io.agentza.microledger.controller;
 import io.agentza.microledger.model.Block;
 import io.agentza.microledger.model.Microledger;
 import io.agentza.microledger.service.LedgerService;
+import io.agentza.microledger.service.LedgerVerifier;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -11,9 +12,11 @@ import org.springframework.web.bind.annotation.*;
 public class LedgerController {
 
     private final LedgerService ledgerService;
+    private final LedgerVerifier ledgerVerifier;
 
-    public LedgerController(LedgerService ledgerService) {
+    public LedgerController(LedgerService ledgerService, LedgerVerifier ledgerVerifier) {
         this.ledgerService = ledgerService;
+        this.ledgerVerifier = ledgerVerifier;
     }
 
     /**
@@ -55,4 +58,30 @@ public class LedgerController {
         }
         return ResponseEntity.ok(ledger);
     }
+
+    /**
+     * GET /api/ledger/{ledgerId}/blocks/{blockNumber}
+     * Retrieve a single block of the ledger by its number, counting from 1.
+     */
+    @GetMapping("/{ledgerId}/blocks/{blockNumber}")
+    public ResponseEntity<Block> getBlock(@PathVariable String ledgerId, @PathVariable long blockNumber) {
+        Block block = ledgerService.getBlock(ledgerId, blockNumber);
+        if (block == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(block);
+    }
+
+    /**
+     * GET /api/ledger/{ledgerId}/verify
+     * Verify the fingerprints, links and signatures of the blocks added to the ledger since it was last verified.
+     */
+    @GetMapping("/{ledgerId}/verify")
+    public ResponseEntity<LedgerVerifier.Verification> verifyLedger(@PathVariable String ledgerId) {
+        LedgerVerifier.Verification verification = ledgerVerifier.verify(ledgerId);
+        if (verification == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(verification);
+    }
 }
@@ -0,0 +1,58 @@
+package io.agentza.microledger.diagnostics;
+
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+// Logs the stack trace of each place where a virtual thread stays pinned to its carrier for longer than the threshold, the
+// first time it happens. Only runs when virtual threads are enabled. A trimmed down version of the pinning monitor of
+// agentza-server, which also counts the pinned events.
+@Component
+public class VirtualThreadPinningMonitor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadPinningMonitor.class);
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final Set<String> reportedStacks = ConcurrentHashMap.newKeySet();
+    private final RecordingStream recording;
+
+    public VirtualThreadPinningMonitor(
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${microledger.diagnostics.pinning-threshold:20ms}") Duration threshold
+    ) {
+        if (!virtualThreads) {
+            recording = null;
+            return;
+        }
+        recording = new RecordingStream();
+        recording.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recording.onEvent(PINNED_EVENT, this::report);
+        recording.startAsync();
+    }
+
+    private void report(RecordedEvent event) {
+        String stack = event.getStackTrace() == null ? "\t(no stack trace)" : event.getStackTrace().getFrames().stream()
+                .limit(24)
+                .map(frame -> "\tat " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber())
+                .collect(Collectors.joining("\n"));
+        if (reportedStacks.add(stack)) {
+            LOG.warn("Virtual thread {} was pinned to its carrier for {} ms at\n{}", event.getThread().getJavaName(), event.getDuration().toMillis(), stack);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package io.agentza.microledger.model;
 
 import java.time.Instant;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 
 /**
@@ -31,6 +30,10 @@ public class Block {
     // A list of signatures from custodians, for demonstration just store as strings or structured objects
     private List<Signature> signatures;
 
+    // (Optional) How many distinct controlling identifiers must have signed the block (m-of-n). Without it, any number of
+    // valid signatures will do.
+    private Integer threshold;
+
     // Constructors, getters, setters ...
 
     public long getBlockNumber() {
@@ -89,23 +92,16 @@ public class Block {
         this.signatures = signatures;
     }
 
-    @Override
-    public String toString() {
-        return canonicalBlockString(this);
+    public Integer getThreshold() {
+        return threshold;
     }
 
-    // TODO add Seals to the canonical string representation
-    private String canonicalBlockString(Block block) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("{")
-                .append("\"blockNumber\":").append(block.getBlockNumber()).append(",")
-                .append("\"previousBlockHash\":\"").append(nullSafe(block.getPreviousBlockHash())).append("\",")
-                .append("\"timeImprint\":\"").append(DateTimeFormatter.ISO_INSTANT.format(block.getTimeImprint())).append("\",");
-        sb.append("}");
-        return sb.toString();
+    public void setThreshold(Integer threshold) {
+        this.threshold = threshold;
     }
 
-    private String nullSafe(String value) {
-        return value == null ? "" : value;
+    @Override
+    public String toString() {
+        return CanonicalBlockEncoder.canonicalString(this);
     }
 }
@@ -0,0 +1,275 @@
+package io.agentza.microledger.model;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Writes the canonical representation of a block, whose SHA-256 is its digitalFingerprint:
+ * <pre>
+ * {"blockNumber":2,"previousBlockHash":"9f86d0...","timeImprint":"2025-03-01T12:00:00.123Z","threshold":1,
+ *  "controllingIdentifiers":[{"identifierType":"RSA","identifierValue":"custodian","publicKey":"MIIBIj...",},],
+ *  "seals":[{"sealType":"SHA-256","sealValue":"abcd1234",},],}
+ * </pre>
+ * Every field and every list element is followed by a comma. Missing strings are written as "", missing lists as [], and
+ * the threshold only when there is one. Quotes and backslashes within strings are escaped with a backslash. The
+ * signatures are not part of it, as they sign the fingerprint.
+ * <p>
+ * The representation is written as UTF-8 straight into the digest, through a small buffer that is reused from block to
+ * block, so that hashing a block allocates next to nothing. An encoder is not thread-safe.
+ */
+public final class CanonicalBlockEncoder {
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final MessageDigest digest;
+    private final byte[] hash;
+    private final byte[] buffer = new byte[512];
+    private final byte[] digits = new byte[20];
+    private int position;
+
+    // When set, receives the representation instead of the digest
+    private ByteArrayOutputStream copy;
+
+    public CanonicalBlockEncoder() {
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        hash = new byte[digest.getDigestLength()];
+    }
+
+    /**
+     * Return the canonical representation of the block, e.g. to log it.
+     */
+    public static String canonicalString(Block block) {
+        CanonicalBlockEncoder encoder = new CanonicalBlockEncoder();
+        encoder.copy = new ByteArrayOutputStream();
+        encoder.encode(block);
+        return encoder.copy.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compute the fingerprint of the block, as lowercase hex.
+     */
+    public String fingerprint(Block block) {
+        digest(block);
+        byte[] hex = new byte[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(hash[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[hash[i] & 0xf];
+        }
+        return new String(hex, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Check that the fingerprint is the one of the block, without allocating its hex form.
+     */
+    public boolean hasFingerprint(Block block, String fingerprint) {
+        if (fingerprint == null || fingerprint.length() != hash.length * 2) {
+            return false;
+        }
+        digest(block);
+        for (int i = 0; i < hash.length; i++) {
+            if (fingerprint.charAt(2 * i) != HEX_DIGITS[(hash[i] >> 4) & 0xf] || fingerprint.charAt(2 * i + 1) != HEX_DIGITS[hash[i] & 0xf]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void digest(Block block) {
+        // Drops whatever an encoding that failed halfway left behind
+        digest.reset();
+        encode(block);
+        try {
+            digest.digest(hash, 0, hash.length);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void encode(Block block) {
+        position = 0;
+        writeAscii("{\"blockNumber\":");
+        writeLong(block.getBlockNumber());
+        writeAscii(",\"previousBlockHash\":");
+        writeString(block.getPreviousBlockHash());
+        writeAscii(",\"timeImprint\":");
+        writeInstant(block.getTimeImprint());
+        writeAscii(",");
+        if (block.getThreshold() != null) {
+            writeAscii("\"threshold\":");
+            writeLong(block.getThreshold());
+            writeAscii(",");
+        }
+
+        writeAscii("\"controllingIdentifiers\":[");
+        List<ControllingIdentifier> identifiers = block.getControllingIdentifiers();
+        for (int i = 0; identifiers != null && i < identifiers.size(); i++) {
+            ControllingIdentifier cid = identifiers.get(i);
+            writeAscii("{\"identifierType\":");
+            writeString(cid.getIdentifierType());
+            writeAscii(",\"identifierValue\":");
+            writeString(cid.getIdentifierValue());
+            writeAscii(",\"publicKey\":");
+            writeString(cid.getPublicKey());
+            writeAscii(",},");
+        }
+        writeAscii("],");
+
+        writeAscii("\"seals\":[");
+        List<Seal> seals = block.getSeals();
+        for (int i = 0; seals != null && i < seals.size(); i++) {
+            Seal seal = seals.get(i);
+            writeAscii("{\"sealType\":");
+            writeString(seal.getSealType());
+            writeAscii(",\"sealValue\":");
+            writeString(seal.getSealValue());
+            writeAscii(",},");
+        }
+        writeAscii("],}");
+        flush();
+    }
+
+    private void writeString(String value) {
+        write('"');
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    write('\\');
+                    write(c);
+                } else if (c < 0x80) {
+                    write(c);
+                } else if (c < 0x800) {
+                    write(0xc0 | c >> 6);
+                    write(0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    write(0xf0 | codePoint >> 18);
+                    write(0x80 | codePoint >> 12 & 0x3f);
+                    write(0x80 | codePoint >> 6 & 0x3f);
+                    write(0x80 | codePoint & 0x3f);
+                } else if (Character.isSurrogate(c)) {
+                    // Unpaired, replaced like String.getBytes does
+                    write('?');
+                } else {
+                    write(0xe0 | c >> 12);
+                    write(0x80 | c >> 6 & 0x3f);
+                    write(0x80 | c & 0x3f);
+                }
+            }
+        }
+        write('"');
+    }
+
+    // Same as DateTimeFormatter.ISO_INSTANT, e.g. 2025-03-01T12:00:00.123Z
+    private void writeInstant(Instant instant) {
+        if (instant == null) {
+            writeString(null);
+            return;
+        }
+        long epochDay = Math.floorDiv(instant.getEpochSecond(), 86_400);
+        int secondOfDay = (int) Math.floorMod(instant.getEpochSecond(), 86_400);
+
+        // Days to civil date, from http://howardhinnant.github.io/date_algorithms.html#civil_from_days
+        long z = epochDay + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long monthIndex = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * monthIndex + 2) / 5 + 1;
+        long month = monthIndex < 10 ? monthIndex + 3 : monthIndex - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        if (year < 0 || year > 9999) {
+            // Written with a sign by ISO_INSTANT
+            writeString(DateTimeFormatter.ISO_INSTANT.format(instant));
+            return;
+        }
+
+        write('"');
+        writePadded(year, 4);
+        write('-');
+        writePadded(month, 2);
+        write('-');
+        writePadded(day, 2);
+        write('T');
+        writePadded(secondOfDay / 3600, 2);
+        write(':');
+        writePadded(secondOfDay / 60 % 60, 2);
+        write(':');
+        writePadded(secondOfDay % 60, 2);
+        int nanos = instant.getNano();
+        if (nanos > 0) {
+            write('.');
+            if (nanos % 1_000_000 == 0) {
+                writePadded(nanos / 1_000_000, 3);
+            } else if (nanos % 1_000 == 0) {
+                writePadded(nanos / 1_000, 6);
+            } else {
+                writePadded(nanos, 9);
+            }
+        }
+        write('Z');
+        write('"');
+    }
+
+    private void writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            writeAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            write('-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (count > 0) {
+            write(digits[--count]);
+        }
+    }
+
+    private void writePadded(long value, int width) {
+        for (int i = width - 1; i >= 0; i--) {
+            digits[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        for (int i = 0; i < width; i++) {
+            write(digits[i]);
+        }
+    }
+
+    private void writeAscii(String value) {
+        for (int i = 0; i < value.length(); i++) {
+            write(value.charAt(i));
+        }
+    }
+
+    private void write(int b) {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void flush() {
+        if (copy != null) {
+            copy.write(buffer, 0, position);
+        } else {
+            digest.update(buffer, 0, position);
+        }
+        position = 0;
+    }
+}
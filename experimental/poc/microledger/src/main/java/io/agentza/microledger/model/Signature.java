@@ -11,6 +11,10 @@ public class Signature {
     // Actual signature value (e.g. base64-encoded)
     private String value;
 
+    // (Optional) The identifierValue of the controlling identifier that made the signature, so that it is only checked
+    // against that identifier's key instead of each of them in turn
+    private String keyId;
+
     public Signature() {}
 
     public Signature(String algorithm, String value) {
@@ -18,6 +22,12 @@ public class Signature {
         this.value = value;
     }
 
+    public Signature(String algorithm, String value, String keyId) {
+        this.algorithm = algorithm;
+        this.value = value;
+        this.keyId = keyId;
+    }
+
     public String getAlgorithm() {
         return algorithm;
     }
@@ -33,4 +43,12 @@ public class Signature {
     public void setValue(String value) {
         this.value = value;
     }
+
+    public String getKeyId() {
+        return keyId;
+    }
+
+    public void setKeyId(String keyId) {
+        this.keyId = keyId;
+    }
 }
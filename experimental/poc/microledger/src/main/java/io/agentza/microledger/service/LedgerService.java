@@ -1,27 +1,69 @@
 package io.agentza.microledger.service;
 
 import io.agentza.microledger.model.Block;
+import io.agentza.microledger.model.CanonicalBlockEncoder;
 import io.agentza.microledger.model.ControllingIdentifier;
 import io.agentza.microledger.model.Microledger;
 import io.agentza.microledger.model.Signature;
+import io.agentza.microledger.storage.LedgerStore;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 @Service
 public class LedgerService {
 
-    // In-memory registry of ledgers: ledgerId -> Microledger
-    private final Map<String, Microledger> ledgers = new ConcurrentHashMap<>();
+    private static final Logger LOG = LoggerFactory.getLogger(LedgerService.class);
+
+    // Where the ledgers and their blocks are kept, see StorageConfiguration
+    private final LedgerStore ledgerStore;
+
+    // One lock per ledger, so that concurrent appends to the same ledger are chained one after the other. These are not
+    // synchronized blocks, which would pin the virtual threads serving the requests while they wait.
+    private final Map<String, ReentrantLock> appendLocks = new ConcurrentHashMap<>();
+
+    // The same custodian keys sign block after block, so parsed public keys are kept by their encoded form, up to
+    // microledger.verify.public-keys.max-size keys
+    private final Cache<String, PublicKey> publicKeys;
+
+    // Idle Signature engines by Java algorithm name, initialized again with the key of each verification. They are pooled
+    // rather than kept per thread, as with virtual threads every request runs on a new thread.
+    private final Map<String, Queue<java.security.Signature>> signatureEngines = new ConcurrentHashMap<>();
+
+    // Idle canonical encoders, pooled like the Signature engines
+    private final Queue<CanonicalBlockEncoder> idleEncoders = new ConcurrentLinkedQueue<>();
+
+    public LedgerService(
+            LedgerStore ledgerStore,
+            @Value("${microledger.verify.public-keys.max-size:10000}") long publicKeysMaxSize
+    ) {
+        this.ledgerStore = ledgerStore;
+        this.publicKeys = Caffeine.newBuilder()
+                .maximumSize(publicKeysMaxSize)
+                .build();
+    }
 
     /**
-     * Create a new Microledger instance and store it in memory.
+     * Create a new Microledger instance and store it.
      */
     public Microledger createLedger() {
         Microledger ledger = new Microledger();
-        ledgers.put(ledger.getId(), ledger);
+        ledgerStore.createLedger(ledger.getId());
         return ledger;
     }
 
@@ -29,73 +71,191 @@ public class LedgerService {
      * Fetch a ledger by its ID (or return null if none found).
      */
     public Microledger getLedger(String ledgerId) {
-        return ledgers.get(ledgerId);
+        List<Block> blocks = getBlocksFrom(ledgerId, 0);
+        if (blocks == null) {
+            return null;
+        }
+        Microledger ledger = new Microledger();
+        ledger.setId(ledgerId);
+        ledger.setBlocks(blocks);
+        return ledger;
+    }
+
+    /**
+     * Fetch a block of a ledger by its number (or return null if none found).
+     */
+    public Block getBlock(String ledgerId, long blockNumber) {
+        return ledgerStore.getBlock(ledgerId, blockNumber);
     }
 
     /**
      * Add a new block to the ledger with the given ID.
      */
     public Block addBlock(String ledgerId, Block newBlock) {
-        Microledger ledger = ledgers.get(ledgerId);
-        if (ledger == null) {
+        if (!ledgerStore.exists(ledgerId)) {
             throw new IllegalArgumentException("Ledger with ID " + ledgerId + " not found");
         }
 
-        // For demonstration, blockNumber = existing size + 1
-        newBlock.setBlockNumber(ledger.getBlocks().size() + 1);
+        ReentrantLock appendLock = appendLock(ledgerId);
+        appendLock.lock();
+        try {
+            // For demonstration, blockNumber = existing size + 1
+            int size = ledgerStore.size(ledgerId);
+            newBlock.setBlockNumber(size + 1);
 
-        // Set the previous block's hash if this is not the genesis block
-        if (newBlock.getBlockNumber() > 1) {
-            Block previousBlock = ledger.getBlocks().get(ledger.getBlocks().size() - 1);
-            newBlock.setPreviousBlockHash(previousBlock.getDigitalFingerprint());
-        }
+            // Set the previous block's hash if this is not the genesis block
+            if (newBlock.getBlockNumber() > 1) {
+                Block previousBlock = ledgerStore.getBlock(ledgerId, size);
+                newBlock.setPreviousBlockHash(previousBlock.getDigitalFingerprint());
+            }
 
-        String computedHash = computeBlockHash(newBlock);
-        if (!computedHash.equals(newBlock.getDigitalFingerprint())) {
-            throw new RuntimeException("Provided digitalFingerprint does not match computed block hash!");
+            if (!hasComputedBlockHash(newBlock)) {
+                throw new RuntimeException("Provided digitalFingerprint does not match computed block hash!");
+            }
+
+            verifySignatures(newBlock);
+
+            ledgerStore.append(ledgerId, newBlock);
+            return newBlock;
+        } finally {
+            appendLock.unlock();
         }
+    }
 
-        verifySignatures(newBlock);
+    /**
+     * Copy the blocks of a ledger from the given index on, as they are between appends (or return null if none found).
+     */
+    List<Block> getBlocksFrom(String ledgerId, int fromIndex) {
+        if (!ledgerStore.exists(ledgerId)) {
+            return null;
+        }
+        // Only the size is taken under the append lock: appended blocks never change, so they are read without holding up
+        // the appends
+        int size;
+        ReentrantLock appendLock = appendLock(ledgerId);
+        appendLock.lock();
+        try {
+            size = ledgerStore.size(ledgerId);
+        } finally {
+            appendLock.unlock();
+        }
+        return ledgerStore.getBlocks(ledgerId, Math.min(fromIndex, size), size);
+    }
 
-        ledger.getBlocks().add(newBlock);
-        return newBlock;
+    // Created on first use, as the ledgers kept by the store outlive the application
+    private ReentrantLock appendLock(String ledgerId) {
+        return appendLocks.computeIfAbsent(ledgerId, id -> new ReentrantLock());
     }
 
-    private String computeBlockHash(Block block) {
+    /**
+     * Compute the hash of the block's canonical representation, i.e. the digitalFingerprint it should have.
+     */
+    public String computeBlockHash(Block block) {
+        CanonicalBlockEncoder encoder = borrowEncoder();
         try {
-            String canonical = block.toString();
-            java.security.MessageDigest md = java.security.MessageDigest.getInstance("SHA-256");
-            byte[] digest = md.digest(canonical.getBytes(java.nio.charset.StandardCharsets.UTF_8));
-            return bytesToHex(digest);
-        } catch (Exception e) {
-            throw new RuntimeException("Error computing block hash", e);
+            return encoder.fingerprint(block);
+        } finally {
+            idleEncoders.offer(encoder);
         }
     }
 
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder sb = new StringBuilder();
-        for (byte b : bytes) {
-            sb.append(String.format("%02x", b));
+    /**
+     * Check that the digitalFingerprint of the block is the hash of its canonical representation.
+     */
+    boolean hasComputedBlockHash(Block block) {
+        CanonicalBlockEncoder encoder = borrowEncoder();
+        try {
+            return encoder.hasFingerprint(block, block.getDigitalFingerprint());
+        } finally {
+            idleEncoders.offer(encoder);
         }
-        return sb.toString();
+    }
+
+    private CanonicalBlockEncoder borrowEncoder() {
+        CanonicalBlockEncoder encoder = idleEncoders.poll();
+        return encoder != null ? encoder : new CanonicalBlockEncoder();
     }
 
     private void verifySignatures(Block block) {
-        String messageToVerify = block.getDigitalFingerprint();
-        for (Signature sig : block.getSignatures()) {
-            boolean valid = false;
-            for (ControllingIdentifier cid : block.getControllingIdentifiers()) {
-                if (cid.getPublicKey() != null && !cid.getPublicKey().isEmpty()) {
-                    valid = verifySignature(cid, sig, messageToVerify);
-                    if (valid) {
-                        break;
+        String failure = checkSignatures(block);
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    /**
+     * Check the signatures of the block. Each must be valid for the controlling identifier its keyId names or, without a
+     * keyId, for any of them, and a block with a threshold must be signed with at least that many distinct public keys, so
+     * that a key listed under several identifiers counts once.
+     * The signatures of a multi-signature block are checked in parallel, and the checks stop at the first invalid one.
+     * Missing signatures or controlling identifiers count as none. Return why the signatures are not valid, or null if
+     * they are.
+     */
+    public String checkSignatures(Block block) {
+        List<Signature> signatures = block.getSignatures() == null ? List.of() : block.getSignatures();
+        List<ControllingIdentifier> identifiers = block.getControllingIdentifiers() == null ? List.of() : block.getControllingIdentifiers();
+        int threshold = block.getThreshold() == null ? 0 : block.getThreshold();
+        if (threshold > identifiers.size()) {
+            return "Threshold of " + threshold + " exceeds the " + identifiers.size() + " controlling identifiers";
+        }
+        if (signatures.size() < threshold) {
+            return "Block has " + signatures.size() + " signatures, below its threshold of " + threshold;
+        }
+
+        // Index of the controlling identifier that made each signature
+        int[] signers = new int[signatures.size()];
+        AtomicInteger invalid = new AtomicInteger(-1);
+        if (signatures.size() == 1) {
+            signers[0] = findSigner(block, identifiers, signatures.get(0));
+            if (signers[0] < 0) {
+                invalid.set(0);
+            }
+        } else {
+            // Forked into the pool of the LedgerVerifier when it verifies the block, and into the common pool otherwise
+            List<ForkJoinTask<?>> checks = new ArrayList<>(signatures.size());
+            for (int i = 0; i < signatures.size(); i++) {
+                int index = i;
+                checks.add(ForkJoinTask.adapt(() -> {
+                    if (invalid.get() < 0) {
+                        signers[index] = findSigner(block, identifiers, signatures.get(index));
+                        if (signers[index] < 0) {
+                            invalid.compareAndSet(-1, index);
+                        }
                     }
-                }
+                }));
             }
-            if (!valid) {
-                throw new RuntimeException("Signature verification failed for signature: " + sig.getValue());
+            ForkJoinTask.invokeAll(checks);
+        }
+        if (invalid.get() >= 0) {
+            return "Signature verification failed for signature: " + signatures.get(invalid.get()).getValue();
+        }
+
+        long distinctSigners = Arrays.stream(signers).mapToObj(signer -> sanitizePublicKey(identifiers.get(signer).getPublicKey())).distinct().count();
+        if (distinctSigners < threshold) {
+            return "Block is signed with " + distinctSigners + " distinct keys, below its threshold of " + threshold;
+        }
+        return null;
+    }
+
+    /**
+     * Return the index of the controlling identifier the signature is valid for, or -1 if there is none.
+     */
+    private int findSigner(Block block, List<ControllingIdentifier> identifiers, Signature signature) {
+        String messageToVerify = block.getDigitalFingerprint();
+        for (int i = 0; i < identifiers.size(); i++) {
+            ControllingIdentifier cid = identifiers.get(i);
+            if (signature.getKeyId() != null && !signature.getKeyId().equals(cid.getIdentifierValue())) {
+                continue;
+            }
+            if (cid.getPublicKey() != null && !cid.getPublicKey().isEmpty() && verifySignature(cid, signature, messageToVerify)) {
+                return i;
+            }
+            if (signature.getKeyId() != null) {
+                // Only the first identifier with the signature's keyId is tried
+                return -1;
             }
         }
+        return -1;
     }
 
     /**
@@ -105,25 +265,38 @@ public class LedgerService {
      */
     private boolean verifySignature(ControllingIdentifier cid, Signature signature, String message) {
         try {
-            // 1. Parse the public key from cid.getPublicKey().
-            //    For example, if it's a Base64-encoded X.509 or a PEM file, you'd parse it with the relevant Java calls.
-
-            java.security.PublicKey pubKey = parsePublicKeyFromPemOrBase64(cid.getPublicKey());
+            // 1. Parse the public key from cid.getPublicKey(), unless it was parsed before.
+            //    It is parsed outside the cache, so that concurrent verifications don't wait on each other.
+            PublicKey pubKey = publicKeys.getIfPresent(cid.getPublicKey());
+            if (pubKey == null) {
+                pubKey = parsePublicKeyFromPemOrBase64(cid.getPublicKey());
+                publicKeys.put(cid.getPublicKey(), pubKey);
+            }
 
-            // 2. Create a Signature instance with the specified algorithm (e.g. "SHA256withRSA" or "SHA256withECDSA").
-            //    The spec's "algorithm" might just be "RSA" or "EC"; we'd likely do "SHA256with" + something.
+            // 2. Take an idle Signature instance for the specified algorithm (e.g. "SHA256withRSA" or "SHA256withECDSA"),
+            //    or create one. The spec's "algorithm" might just be "RSA" or "EC"; we'd likely do "SHA256with" + something.
             String algo = mapToJavaSignatureAlgorithm(signature.getAlgorithm());
-            java.security.Signature sigInstance = java.security.Signature.getInstance(algo);
-            sigInstance.initVerify(pubKey);
-            sigInstance.update(message.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            Queue<java.security.Signature> idleEngines = signatureEngines.computeIfAbsent(algo, key -> new ConcurrentLinkedQueue<>());
+            java.security.Signature sigInstance = idleEngines.poll();
+            if (sigInstance == null) {
+                sigInstance = java.security.Signature.getInstance(algo);
+            }
+            try {
+                sigInstance.initVerify(pubKey);
+                sigInstance.update(message.getBytes(java.nio.charset.StandardCharsets.UTF_8));
 
-            // 3. Decode the signature from base64 or hex
-            byte[] signatureBytes = decodeSignatureValue(signature.getValue());
+                // 3. Decode the signature from base64 or hex
+                byte[] signatureBytes = decodeSignatureValue(signature.getValue());
 
-            // 4. Verify
-            return sigInstance.verify(signatureBytes);
+                // 4. Verify
+                return sigInstance.verify(signatureBytes);
+            } finally {
+                // initVerify resets the instance for its next use
+                idleEngines.offer(sigInstance);
+            }
         } catch (Exception e) {
-            e.printStackTrace();
+            // Expected when trying a signature against the key of another algorithm
+            LOG.debug("Signature {} does not verify with the key of {}: {}", signature.getValue(), cid.getIdentifierValue(), e.toString());
             return false;
         }
     }
@@ -141,10 +314,7 @@ public class LedgerService {
          */
 
         // 1. Remove PEM armor (header/footer) and any whitespace
-        String sanitized = pubKeyEncoded
-                .replace("-----BEGIN PUBLIC KEY-----", "")
-                .replace("-----END PUBLIC KEY-----", "")
-                .replaceAll("\\s+", ""); // remove newlines and spaces
+        String sanitized = sanitizePublicKey(pubKeyEncoded);
 
         // 2. Base64-decode the key bytes
         byte[] decodedKey = java.util.Base64.getDecoder().decode(sanitized);
@@ -159,6 +329,13 @@ public class LedgerService {
         return keyFactory.generatePublic(keySpec);
     }
 
+    // The Base64 of the key, the same however it is wrapped
+    private static String sanitizePublicKey(String pubKeyEncoded) {
+        return pubKeyEncoded
+                .replace("-----BEGIN PUBLIC KEY-----", "")
+                .replace("-----END PUBLIC KEY-----", "")
+                .replaceAll("\\s+", ""); // remove newlines and spaces
+    }
 
     private String mapToJavaSignatureAlgorithm(String algo) {
         // If user supplies "RSA", we might interpret that as "SHA256withRSA"
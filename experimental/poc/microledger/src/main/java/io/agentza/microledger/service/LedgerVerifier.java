@@ -0,0 +1,143 @@
+package io.agentza.microledger.service;
+
+import io.agentza.microledger.model.Block;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Re-verifies whole ledgers: that every block has the right number, links to the fingerprint of the block before it, has
+// the fingerprint of its own contents, and has valid signatures from enough of its controlling identifiers. The blocks
+// are split into chunks of microledger.verify.chunk-blocks that are verified in parallel on a fork-join pool of
+// microledger.verify.parallelism threads (default: one per core).
+//
+// Blocks are never changed once added, so the verifier remembers how many blocks of each ledger it has found valid, and
+// later verifications only cover the blocks added since.
+@Service
+public class LedgerVerifier {
+
+    private final LedgerService ledgerService;
+    private final ForkJoinPool pool;
+    private final int chunkBlocks;
+
+    // ledgerId -> number of blocks from the genesis block on that are known to be valid
+    private final Map<String, Long> verifiedHeights = new ConcurrentHashMap<>();
+
+    public LedgerVerifier(
+            LedgerService ledgerService,
+            @Value("${microledger.verify.parallelism:0}") int parallelism,
+            @Value("${microledger.verify.chunk-blocks:64}") int chunkBlocks
+    ) {
+        this.ledgerService = ledgerService;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.chunkBlocks = Math.max(1, chunkBlocks);
+    }
+
+    /**
+     * Verify the blocks of the ledger with the given ID that were added since it was last verified (or return null if
+     * none found).
+     */
+    public Verification verify(String ledgerId) {
+        long verifiedHeight = verifiedHeights.getOrDefault(ledgerId, 0L);
+        // Starts at the last verified block, which the first new block must link to
+        int fromIndex = (int) Math.max(0, verifiedHeight - 1);
+        List<Block> blocks = ledgerService.getBlocksFrom(ledgerId, fromIndex);
+        if (blocks == null) {
+            return null;
+        }
+        int first = (int) (verifiedHeight - fromIndex);
+        long height = fromIndex + blocks.size();
+
+        Failure failure = first < blocks.size() ? pool.invoke(new VerifyTask(blocks, fromIndex, first, blocks.size())) : null;
+        long newVerifiedHeight = failure == null ? height : failure.blockNumber() - 1;
+        verifiedHeights.merge(ledgerId, newVerifiedHeight, Math::max);
+        return new Verification(
+                ledgerId,
+                failure == null,
+                height,
+                newVerifiedHeight,
+                blocks.size() - first,
+                failure == null ? null : failure.blockNumber(),
+                failure == null ? null : failure.reason()
+        );
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Return why the block at the given index is invalid, or null if it is valid.
+     */
+    private String checkBlock(List<Block> blocks, int fromIndex, int index) {
+        Block block = blocks.get(index);
+        if (block.getBlockNumber() != fromIndex + index + 1) {
+            return "Unexpected block number";
+        }
+        if (fromIndex + index > 0 && !Objects.equals(block.getPreviousBlockHash(), blocks.get(index - 1).getDigitalFingerprint())) {
+            return "previousBlockHash does not match the digitalFingerprint of the previous block";
+        }
+        if (!ledgerService.hasComputedBlockHash(block)) {
+            return "digitalFingerprint does not match computed block hash";
+        }
+        return ledgerService.checkSignatures(block);
+    }
+
+    // Finds the first invalid block in [from, to) of the blocks
+    private class VerifyTask extends RecursiveTask<Failure> {
+
+        private final List<Block> blocks;
+        private final int fromIndex;
+        private final int from;
+        private final int to;
+
+        VerifyTask(List<Block> blocks, int fromIndex, int from, int to) {
+            this.blocks = blocks;
+            this.fromIndex = fromIndex;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Failure compute() {
+            if (to - from <= chunkBlocks) {
+                for (int index = from; index < to; index++) {
+                    String reason = checkBlock(blocks, fromIndex, index);
+                    if (reason != null) {
+                        return new Failure(fromIndex + index + 1, reason);
+                    }
+                }
+                return null;
+            }
+            int middle = (from + to) >>> 1;
+            VerifyTask lower = new VerifyTask(blocks, fromIndex, from, middle);
+            lower.fork();
+            Failure upperFailure = new VerifyTask(blocks, fromIndex, middle, to).compute();
+            Failure lowerFailure = lower.join();
+            return lowerFailure != null ? lowerFailure : upperFailure;
+        }
+    }
+
+    private record Failure(long blockNumber, String reason) {}
+
+    /**
+     * The outcome of verifying a ledger: its height, how many of its blocks are known to be valid, and how many of them
+     * this verification checked. An invalid ledger also has the number of its first invalid block, and why.
+     */
+    public record Verification(
+            String ledgerId,
+            boolean valid,
+            long height,
+            long verifiedHeight,
+            long checkedBlocks,
+            Long invalidBlockNumber,
+            String reason
+    ) {}
+}
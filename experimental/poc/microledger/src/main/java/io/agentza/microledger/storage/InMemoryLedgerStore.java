@@ -0,0 +1,66 @@
+package io.agentza.microledger.storage;
+
+import io.agentza.microledger.model.Block;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps the blocks of every ledger on the heap, until the application stops. Used unless microledger.storage.dir is set.
+public class InMemoryLedgerStore implements LedgerStore {
+
+    // ledgerId -> blocks
+    private final Map<String, Blocks> ledgers = new ConcurrentHashMap<>();
+
+    @Override
+    public void createLedger(String ledgerId) {
+        ledgers.put(ledgerId, new Blocks());
+    }
+
+    @Override
+    public boolean exists(String ledgerId) {
+        return ledgers.containsKey(ledgerId);
+    }
+
+    @Override
+    public int size(String ledgerId) {
+        return ledgers.get(ledgerId).size;
+    }
+
+    @Override
+    public void append(String ledgerId, Block block) {
+        ledgers.get(ledgerId).add(block);
+    }
+
+    @Override
+    public Block getBlock(String ledgerId, long blockNumber) {
+        Blocks blocks = ledgers.get(ledgerId);
+        return blocks == null || blockNumber < 1 || blockNumber > blocks.size ? null : blocks.blocks[(int) blockNumber - 1];
+    }
+
+    @Override
+    public List<Block> getBlocks(String ledgerId, int fromIndex, int toIndex) {
+        Block[] blocks = ledgers.get(ledgerId).blocks;
+        return new ArrayList<>(Arrays.asList(blocks).subList(fromIndex, toIndex));
+    }
+
+    // The blocks of a ledger, as the locations of the SegmentLedgerStore. Appends are serialized by the caller. Readers see
+    // every block below the size they read.
+    private static final class Blocks {
+
+        private volatile Block[] blocks = new Block[16];
+        private volatile int size;
+
+        void add(Block block) {
+            Block[] current = blocks;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                blocks = current;
+            }
+            current[size] = block;
+            size = size + 1;
+        }
+    }
+}
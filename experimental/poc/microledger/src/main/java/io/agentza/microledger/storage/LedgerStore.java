@@ -0,0 +1,42 @@
+package io.agentza.microledger.storage;
+
+import io.agentza.microledger.model.Block;
+
+import java.util.List;
+
+/**
+ * Where the ledgers and their blocks are kept. Blocks are only ever appended, and never change once appended.
+ * Appends to the same ledger must be serialized by the caller. Blocks can be read while they go on.
+ */
+public interface LedgerStore {
+
+    /**
+     * Register a new, empty ledger.
+     */
+    void createLedger(String ledgerId);
+
+    /**
+     * Whether a ledger with the given ID exists.
+     */
+    boolean exists(String ledgerId);
+
+    /**
+     * The number of blocks of the ledger, i.e. the number of its last block.
+     */
+    int size(String ledgerId);
+
+    /**
+     * Append a block to the end of the ledger.
+     */
+    void append(String ledgerId, Block block);
+
+    /**
+     * Fetch the block with the given number, counting from 1 (or return null if none found).
+     */
+    Block getBlock(String ledgerId, long blockNumber);
+
+    /**
+     * Fetch the blocks of the ledger from fromIndex up to toIndex (exclusive), which must not be above the size.
+     */
+    List<Block> getBlocks(String ledgerId, int fromIndex, int toIndex);
+}
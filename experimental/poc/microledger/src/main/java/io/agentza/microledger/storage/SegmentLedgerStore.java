@@ -0,0 +1,417 @@
+package io.agentza.microledger.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import io.agentza.microledger.model.Block;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// Keeps the ledgers in an append-only log of memory-mapped segment files under microledger.storage.dir, so that they
+// survive restarts and the blocks don't take up heap. Segments are microledger.storage.segment-size files named
+// segment-<n>.log, preallocated and filled one after the other. A segment starts with a header:
+//   synced end (int) | CRC32C of the synced end (int)
+// followed by the records, each of them:
+//   length (int) | CRC32C of the length, type and payload (int) | type (byte) | payload
+// A ledger record has the ledgerId as payload, and a block record the length of the ledgerId (short), the ledgerId and
+// the block as JSON. A zero length marks the end of the records in a segment.
+//
+// The heap only holds an index per ledger, with the location in the log of each of its blocks, so that any block is
+// found by its number in O(1). The index is rebuilt by scanning the log on startup.
+//
+// The synced end is where the records known to be on disk end. The kernel writes the mapped pages back in any order, so
+// after a crash an unsynced record may be torn while a later one reached the disk. Past the synced end of the last
+// segment, the records are kept up to the first torn or corrupt one, and it and everything after it are dropped. A bad
+// record before the synced end, or anywhere in an earlier segment, is corruption, and startup fails.
+//
+// Writes reach the disk when the mapped pages are forced, per microledger.storage.fsync policy:
+//   BLOCK:    after every append, before it returns (the default)
+//   BATCH:    after every microledger.storage.fsync-batch-size appends, and every microledger.storage.fsync-interval
+//   PERIODIC: every microledger.storage.fsync-interval
+// A segment is forced in full when the next one is started, so only the last segment can hold unsynced records. Each sync
+// writes the synced end of the sync before it, whose records are on disk already, so that the header and the new records
+// go out in one force: the records of the last sync are past the synced end, but are intact and kept.
+public class SegmentLedgerStore implements LedgerStore, AutoCloseable {
+
+    public enum FsyncPolicy {
+        BLOCK, BATCH, PERIODIC
+    }
+
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentLedgerStore.class);
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int HEADER_SIZE = 9;
+    private static final byte LEDGER_RECORD = 1;
+    private static final byte BLOCK_RECORD = 2;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final int fsyncBatchSize;
+    private final ObjectMapper objectMapper;
+    private final ScheduledExecutorService syncer;
+
+    // All segments by number, mapped. Only the last one is appended to.
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    // ledgerId -> locations of its blocks
+    private final Map<String, LedgerIndex> ledgers = new ConcurrentHashMap<>();
+
+    // Guards the appends to the last segment. Not synchronized, which would pin the virtual threads serving the requests.
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private int position;
+    private int syncedPosition;
+    private int unsyncedRecords;
+
+    public SegmentLedgerStore(Path dir, int segmentSize, FsyncPolicy fsyncPolicy, int fsyncBatchSize, Duration fsyncInterval, ObjectMapper objectMapper) throws IOException {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncBatchSize = Math.max(1, fsyncBatchSize);
+        this.objectMapper = objectMapper;
+
+        long start = System.nanoTime();
+        Files.createDirectories(dir);
+        recover();
+        LOG.info("Loaded {} ledgers with {} blocks from {} segments under {} in {} ms",
+                ledgers.size(), ledgers.values().stream().mapToLong(index -> index.size).sum(), segments.size(), dir,
+                (System.nanoTime() - start) / 1_000_000);
+
+        if (fsyncPolicy == FsyncPolicy.BLOCK) {
+            syncer = null;
+        } else {
+            syncer = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "microledger-fsync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::sync, fsyncInterval.toMillis(), fsyncInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void createLedger(String ledgerId) {
+        byte[] payload = ledgerId.getBytes(StandardCharsets.UTF_8);
+        appendLock.lock();
+        try {
+            write(LEDGER_RECORD, null, payload);
+            ledgers.put(ledgerId, new LedgerIndex());
+            afterWrite();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean exists(String ledgerId) {
+        return ledgers.containsKey(ledgerId);
+    }
+
+    @Override
+    public int size(String ledgerId) {
+        return ledgers.get(ledgerId).size;
+    }
+
+    @Override
+    public void append(String ledgerId, Block block) {
+        byte[] id = ledgerId.getBytes(StandardCharsets.UTF_8);
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(block);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        LedgerIndex index = ledgers.get(ledgerId);
+        appendLock.lock();
+        try {
+            index.add(write(BLOCK_RECORD, id, json));
+            afterWrite();
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public Block getBlock(String ledgerId, long blockNumber) {
+        LedgerIndex index = ledgers.get(ledgerId);
+        if (index == null || blockNumber < 1 || blockNumber > index.size) {
+            return null;
+        }
+        return read(index.locations[(int) blockNumber - 1]);
+    }
+
+    @Override
+    public List<Block> getBlocks(String ledgerId, int fromIndex, int toIndex) {
+        // A grown locations array is a copy of the one before, so whichever is read has every location below the size
+        long[] locations = ledgers.get(ledgerId).locations;
+        List<Block> blocks = new ArrayList<>(Math.max(0, toIndex - fromIndex));
+        for (int i = fromIndex; i < toIndex; i++) {
+            blocks.add(read(locations[i]));
+        }
+        return blocks;
+    }
+
+    /**
+     * Force the records appended since the last sync to disk.
+     */
+    public void sync() {
+        appendLock.lock();
+        try {
+            if (position > syncedPosition) {
+                MappedByteBuffer buffer = activeSegment().buffer;
+                buffer.putInt(0, syncedPosition);
+                buffer.putInt(4, syncedEndChecksum(buffer));
+                buffer.force(0, position);
+                syncedPosition = position;
+            }
+            unsyncedRecords = 0;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        sync();
+        for (Segment segment : segments) {
+            segment.channel.close();
+        }
+    }
+
+    // Writes a record at the end of the log, under the append lock, and returns its location
+    private long write(byte type, byte[] ledgerId, byte[] payload) {
+        int length = (ledgerId == null ? 0 : 2 + ledgerId.length) + payload.length;
+        if (SEGMENT_HEADER_SIZE + HEADER_SIZE + length > segmentSize) {
+            throw new IllegalArgumentException("Record of " + length + " bytes does not fit in a segment of " + segmentSize + " bytes");
+        }
+        Segment segment = activeSegment();
+        if (position + HEADER_SIZE + length > segment.buffer.capacity()) {
+            segment = startSegment();
+        }
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = position + HEADER_SIZE;
+        if (ledgerId != null) {
+            buffer.putShort(offset, (short) ledgerId.length);
+            buffer.put(offset + 2, ledgerId);
+            offset += 2 + ledgerId.length;
+        }
+        buffer.put(offset, payload);
+        buffer.put(position + 8, type);
+        buffer.putInt(position, length);
+        // Covers the length too, so that a record is found torn whichever of its parts didn't reach the disk
+        buffer.putInt(position + 4, checksum(buffer, position, length));
+
+        long location = (long) segment.number << 32 | position;
+        position += HEADER_SIZE + length;
+        return location;
+    }
+
+    private void afterWrite() {
+        switch (fsyncPolicy) {
+            case BLOCK -> sync();
+            case BATCH -> {
+                if (++unsyncedRecords >= fsyncBatchSize) {
+                    sync();
+                }
+            }
+            case PERIODIC -> {
+            }
+        }
+    }
+
+    private Block read(long location) {
+        MappedByteBuffer buffer = segments.get((int) (location >>> 32)).buffer;
+        int offset = (int) location;
+        int length = buffer.getInt(offset);
+        int ledgerIdLength = buffer.getShort(offset + HEADER_SIZE);
+        int jsonOffset = offset + HEADER_SIZE + 2 + ledgerIdLength;
+        try {
+            return objectMapper.readValue(new ByteBufferBackedInputStream(buffer.slice(jsonOffset, length - 2 - ledgerIdLength)), Block.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private Segment activeSegment() {
+        return segments.getLast();
+    }
+
+    // Forces the rest of the active segment, and maps a new one after it
+    private Segment startSegment() {
+        try {
+            if (!segments.isEmpty()) {
+                sync();
+            }
+            Segment segment = Segment.open(dir, segments.size(), segmentSize);
+            segment.channel.force(true);
+            segments.add(segment);
+            position = SEGMENT_HEADER_SIZE;
+            syncedPosition = SEGMENT_HEADER_SIZE;
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(path -> path.getFileName().toString().matches("segment-\\d+\\.log")).sorted().toList();
+        }
+        for (int number = 0; number < files.size(); number++) {
+            if (!files.get(number).equals(Segment.path(dir, number))) {
+                throw new IllegalStateException("Segment " + Segment.path(dir, number) + " is missing");
+            }
+            segments.add(Segment.open(dir, number, segmentSize));
+        }
+        if (segments.isEmpty()) {
+            startSegment();
+            return;
+        }
+
+        for (Segment segment : segments) {
+            boolean last = segment == activeSegment();
+            int end = scan(segment);
+            if (end < syncedEnd(segment) || !last && !isZero(segment.buffer, end)) {
+                throw new IllegalStateException("Segment " + Segment.path(dir, segment.number) + " is corrupt at offset " + end);
+            }
+            if (!isZero(segment.buffer, end)) {
+                LOG.warn("Dropping the unsynced records from the torn or corrupt one at offset {} of {}", end, Segment.path(dir, segment.number));
+                for (int offset = end; offset < segment.buffer.capacity(); offset++) {
+                    segment.buffer.put(offset, (byte) 0);
+                }
+                segment.buffer.force();
+            }
+            position = end;
+        }
+        syncedPosition = position;
+    }
+
+    // Indexes the valid records of the segment, and returns where they end
+    private int scan(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = SEGMENT_HEADER_SIZE;
+        while (offset + HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_SIZE + length > buffer.capacity() || buffer.getInt(offset + 4) != checksum(buffer, offset, length)) {
+                break;
+            }
+            byte type = buffer.get(offset + 8);
+            if (type == LEDGER_RECORD) {
+                ledgers.put(readString(buffer, offset + HEADER_SIZE, length), new LedgerIndex());
+            } else if (type == BLOCK_RECORD) {
+                String ledgerId = readString(buffer, offset + HEADER_SIZE + 2, buffer.getShort(offset + HEADER_SIZE));
+                LedgerIndex index = ledgers.get(ledgerId);
+                if (index == null) {
+                    throw new IllegalStateException("Block of unknown ledger " + ledgerId + " at offset " + offset + " of " + Segment.path(dir, segment.number));
+                }
+                index.add((long) segment.number << 32 | offset);
+            } else {
+                break;
+            }
+            offset += HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    // Where the records on disk end as of the last but one sync, or the start of the records if the segment was never synced
+    private int syncedEnd(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        if (buffer.getLong(0) == 0) {
+            return SEGMENT_HEADER_SIZE;
+        }
+        if (buffer.getInt(4) != syncedEndChecksum(buffer)) {
+            throw new IllegalStateException("Segment " + Segment.path(dir, segment.number) + " has a corrupt header");
+        }
+        return buffer.getInt(0);
+    }
+
+    private static int syncedEndChecksum(MappedByteBuffer buffer) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(0, 4));
+        return (int) crc.getValue();
+    }
+
+    private static int checksum(MappedByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, 4));
+        crc.update(buffer.slice(offset + 8, 1 + length));
+        return (int) crc.getValue();
+    }
+
+    private static String readString(MappedByteBuffer buffer, int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isZero(MappedByteBuffer buffer, int from) {
+        int offset = from;
+        for (; offset + 8 <= buffer.capacity(); offset += 8) {
+            if (buffer.getLong(offset) != 0) {
+                return false;
+            }
+        }
+        for (; offset < buffer.capacity(); offset++) {
+            if (buffer.get(offset) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private record Segment(int number, FileChannel channel, MappedByteBuffer buffer) {
+
+        static Path path(Path dir, int number) {
+            return dir.resolve(String.format("segment-%06d.log", number));
+        }
+
+        // Maps an existing segment with its own size, or creates a new one of the given size
+        static Segment open(Path dir, int number, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path(dir, number), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Mapping a new, empty file grows it to the size of the mapping
+            long mappedSize = channel.size() > 0 ? channel.size() : size;
+            return new Segment(number, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, mappedSize));
+        }
+    }
+
+    // Locations of the blocks of a ledger: the segment number in the high int and the offset in it in the low one. Only
+    // appended to under the append lock. Readers see every location below the size they read.
+    private static final class LedgerIndex {
+
+        private volatile long[] locations = new long[16];
+        private volatile int size;
+
+        void add(long location) {
+            long[] current = locations;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                locations = current;
+            }
+            current[size] = location;
+            size = size + 1;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.agentza.microledger.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+
+// Ledgers are kept in memory, and lost on restart, unless microledger.storage.dir is set
+@Configuration
+public class StorageConfiguration {
+
+    @Bean
+    public LedgerStore ledgerStore(
+            ObjectMapper objectMapper,
+            @Value("${microledger.storage.dir:}") String dir,
+            @Value("${microledger.storage.segment-size:64MB}") DataSize segmentSize,
+            @Value("${microledger.storage.fsync:BLOCK}") SegmentLedgerStore.FsyncPolicy fsync,
+            @Value("${microledger.storage.fsync-batch-size:100}") int fsyncBatchSize,
+            @Value("${microledger.storage.fsync-interval:1s}") Duration fsyncInterval
+    ) throws IOException {
+        if (dir.isBlank()) {
+            return new InMemoryLedgerStore();
+        }
+        return new SegmentLedgerStore(Path.of(dir), Math.toIntExact(segmentSize.toBytes()), fsync, fsyncBatchSize, fsyncInterval, objectMapper);
+    }
+}
@@ -0,0 +1,79 @@
+package io.agentza.microledger.service;
+
+import io.agentza.microledger.model.Block;
+import io.agentza.microledger.model.ControllingIdentifier;
+import io.agentza.microledger.model.Signature;
+import io.agentza.microledger.storage.InMemoryLedgerStore;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class LedgerServiceTest {
+
+    private static final String FINGERPRINT = "fingerprint";
+
+    private final LedgerService ledgerService = new LedgerService(new InMemoryLedgerStore(), 100);
+
+    @Test
+    void acceptsThresholdMetByDistinctKeys() throws GeneralSecurityException {
+        KeyPair first = keyPair();
+        KeyPair second = keyPair();
+        Block block = block(2,
+                List.of(identifier("did:example:1", first), identifier("did:example:2", second)),
+                List.of(sign(first, "did:example:1"), sign(second, "did:example:2")));
+
+        assertNull(ledgerService.checkSignatures(block));
+    }
+
+    @Test
+    void countsKeyListedUnderSeveralIdentifiersOnce() throws GeneralSecurityException {
+        KeyPair key = keyPair();
+        Signature signature = sign(key, null);
+        Block block = block(2,
+                List.of(identifier("did:example:1", key), identifier("did:example:2", key)),
+                List.of(new Signature("RSA", signature.getValue(), "did:example:1"), new Signature("RSA", signature.getValue(), "did:example:2")));
+
+        assertEquals("Block is signed with 1 distinct keys, below its threshold of 2", ledgerService.checkSignatures(block));
+    }
+
+    @Test
+    void treatsMissingSignaturesAndIdentifiersAsNone() {
+        assertNull(ledgerService.checkSignatures(block(null, null, null)));
+        assertNotNull(ledgerService.checkSignatures(block(1, null, null)));
+    }
+
+    private static Block block(Integer threshold, List<ControllingIdentifier> identifiers, List<Signature> signatures) {
+        Block block = new Block();
+        block.setDigitalFingerprint(FINGERPRINT);
+        block.setThreshold(threshold);
+        block.setControllingIdentifiers(identifiers);
+        block.setSignatures(signatures);
+        return block;
+    }
+
+    private static KeyPair keyPair() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+
+    private static ControllingIdentifier identifier(String value, KeyPair key) {
+        return new ControllingIdentifier("did", value, Base64.getEncoder().encodeToString(key.getPublic().getEncoded()));
+    }
+
+    private static Signature sign(KeyPair key, String keyId) throws GeneralSecurityException {
+        java.security.Signature signer = java.security.Signature.getInstance("SHA256withRSA");
+        signer.initSign(key.getPrivate());
+        signer.update(FINGERPRINT.getBytes(StandardCharsets.UTF_8));
+        return new Signature("RSA", Base64.getEncoder().encodeToString(signer.sign()), keyId);
+    }
+}
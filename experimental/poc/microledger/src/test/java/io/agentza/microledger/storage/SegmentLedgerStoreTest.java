@@ -0,0 +1,217 @@
+package io.agentza.microledger.storage;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.agentza.microledger.model.Block;
+import io.agentza.microledger.model.ControllingIdentifier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentLedgerStoreTest {
+
+    private static final int SEGMENT_SIZE = 1 << 20;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int HEADER_SIZE = 9;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBlocksBackBeforeAndAfterRestart() throws IOException {
+        try (SegmentLedgerStore store = open(SEGMENT_SIZE)) {
+            store.createLedger("ledger-1");
+            store.createLedger("ledger-2");
+            store.append("ledger-1", block(1, ""));
+            store.append("ledger-2", block(1, "other"));
+            store.append("ledger-1", block(2, ""));
+            store.append("ledger-1", block(3, ""));
+            assertBlocks(store);
+        }
+        try (SegmentLedgerStore store = open(SEGMENT_SIZE)) {
+            assertBlocks(store);
+        }
+    }
+
+    private void assertBlocks(LedgerStore store) {
+        assertTrue(store.exists("ledger-1"));
+        assertEquals(3, store.size("ledger-1"));
+        assertEquals(1, store.size("ledger-2"));
+        for (int number = 1; number <= 3; number++) {
+            assertBlock(block(number, ""), store.getBlock("ledger-1", number));
+        }
+        assertBlock(block(1, "other"), store.getBlock("ledger-2", 1));
+        assertNull(store.getBlock("ledger-1", 4));
+        assertNull(store.getBlock("ledger-1", 0));
+
+        List<Block> blocks = store.getBlocks("ledger-1", 1, 3);
+        assertEquals(2, blocks.size());
+        assertBlock(block(2, ""), blocks.get(0));
+        assertBlock(block(3, ""), blocks.get(1));
+    }
+
+    @Test
+    void dropsRecordTornAtTheTail() throws IOException {
+        appendBlocks(3);
+        List<Integer> records = recordOffsets(segment(0));
+        // Flip a byte of the last block, as if only part of it reached the disk
+        flipByte(segment(0), records.get(3) + HEADER_SIZE + 20);
+
+        try (SegmentLedgerStore store = open(SEGMENT_SIZE)) {
+            assertEquals(2, store.size("ledger"));
+            store.append("ledger", block(3, "rewritten"));
+        }
+        try (SegmentLedgerStore store = open(SEGMENT_SIZE)) {
+            assertEquals(3, store.size("ledger"));
+            assertBlock(block(2, ""), store.getBlock("ledger", 2));
+            assertBlock(block(3, "rewritten"), store.getBlock("ledger", 3));
+        }
+    }
+
+    @Test
+    void dropsRecordWhoseHeaderIsMissingAtTheTail() throws IOException {
+        appendBlocks(3);
+        List<Integer> records = recordOffsets(segment(0));
+        // The payload of the last block reached the disk, but not its length
+        write(segment(0), records.get(3), new byte[4]);
+
+        try (SegmentLedgerStore store = open(SEGMENT_SIZE)) {
+            assertEquals(2, store.size("ledger"));
+        }
+    }
+
+    @Test
+    void dropsUnsyncedRecordsFromTheFirstTornOne() throws IOException {
+        // Nothing is synced before the store is closed, so the header has the records end before the first of them
+        try (SegmentLedgerStore store = open(SEGMENT_SIZE, SegmentLedgerStore.FsyncPolicy.PERIODIC)) {
+            store.createLedger("ledger");
+            for (int number = 1; number <= 3; number++) {
+                store.append("ledger", block(number, ""));
+            }
+        }
+        List<Integer> records = recordOffsets(segment(0));
+        // The second block was torn, while the third one after it reached the disk
+        flipByte(segment(0), records.get(2) + HEADER_SIZE + 20);
+
+        try (SegmentLedgerStore store = open(SEGMENT_SIZE)) {
+            assertEquals(1, store.size("ledger"));
+            assertBlock(block(1, ""), store.getBlock("ledger", 1));
+        }
+    }
+
+    @Test
+    void failsOnCorruptSyncedRecord() throws IOException {
+        appendBlocks(3);
+        List<Integer> records = recordOffsets(segment(0));
+        flipByte(segment(0), records.get(2) + HEADER_SIZE + 20);
+
+        assertThrows(IllegalStateException.class, () -> open(SEGMENT_SIZE));
+    }
+
+    @Test
+    void startsNewSegmentsWhenFull() throws IOException {
+        int segmentSize = 4096;
+        int blocks = 40;
+        try (SegmentLedgerStore store = open(segmentSize)) {
+            store.createLedger("ledger");
+            for (int number = 1; number <= blocks; number++) {
+                store.append("ledger", block(number, "x".repeat(300)));
+            }
+        }
+        List<Path> segments;
+        try (Stream<Path> list = Files.list(dir)) {
+            segments = list.sorted().toList();
+        }
+        assertTrue(segments.size() > 1, "Expected several segments, found " + segments);
+        for (Path segment : segments) {
+            assertEquals(segmentSize, Files.size(segment));
+        }
+
+        try (SegmentLedgerStore store = open(segmentSize)) {
+            assertEquals(blocks, store.size("ledger"));
+            List<Block> read = store.getBlocks("ledger", 0, blocks);
+            for (int number = 1; number <= blocks; number++) {
+                assertBlock(block(number, "x".repeat(300)), read.get(number - 1));
+            }
+        }
+    }
+
+    private SegmentLedgerStore open(int segmentSize) throws IOException {
+        return open(segmentSize, SegmentLedgerStore.FsyncPolicy.BLOCK);
+    }
+
+    private SegmentLedgerStore open(int segmentSize, SegmentLedgerStore.FsyncPolicy fsyncPolicy) throws IOException {
+        return new SegmentLedgerStore(dir, segmentSize, fsyncPolicy, 1, Duration.ofHours(1), objectMapper);
+    }
+
+    // One ledger record followed by the given number of block records, in the first segment
+    private void appendBlocks(int blocks) throws IOException {
+        try (SegmentLedgerStore store = open(SEGMENT_SIZE)) {
+            store.createLedger("ledger");
+            for (int number = 1; number <= blocks; number++) {
+                store.append("ledger", block(number, ""));
+            }
+        }
+    }
+
+    private static Block block(int number, String publicKey) {
+        Block block = new Block();
+        block.setBlockNumber(number);
+        block.setPreviousBlockHash(number == 1 ? null : "fingerprint-" + (number - 1));
+        block.setDigitalFingerprint("fingerprint-" + number);
+        block.setTimeImprint(Instant.ofEpochSecond(1_700_000_000L + number));
+        block.setControllingIdentifiers(List.of(new ControllingIdentifier("did", "did:example:" + number, publicKey)));
+        return block;
+    }
+
+    private static void assertBlock(Block expected, Block actual) {
+        assertEquals(expected.getBlockNumber(), actual.getBlockNumber());
+        assertEquals(expected.getPreviousBlockHash(), actual.getPreviousBlockHash());
+        assertEquals(expected.getDigitalFingerprint(), actual.getDigitalFingerprint());
+        assertEquals(expected.getTimeImprint(), actual.getTimeImprint());
+        assertEquals(expected.getControllingIdentifiers().getFirst().getIdentifierValue(), actual.getControllingIdentifiers().getFirst().getIdentifierValue());
+        assertEquals(expected.getControllingIdentifiers().getFirst().getPublicKey(), actual.getControllingIdentifiers().getFirst().getPublicKey());
+    }
+
+    private Path segment(int number) {
+        return dir.resolve(String.format("segment-%06d.log", number));
+    }
+
+    // Where the records of the segment start, following their lengths up to the first zero one
+    private static List<Integer> recordOffsets(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        List<Integer> offsets = new ArrayList<>();
+        for (int offset = SEGMENT_HEADER_SIZE; buffer.getInt(offset) > 0; offset += HEADER_SIZE + buffer.getInt(offset)) {
+            offsets.add(offset);
+        }
+        return offsets;
+    }
+
+    private static void flipByte(Path segment, int offset) throws IOException {
+        byte[] bytes = Files.readAllBytes(segment);
+        write(segment, offset, new byte[]{(byte) ~bytes[offset]});
+    }
+
+    private static void write(Path segment, int offset, byte[] bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes), offset);
+        }
+    }
+}